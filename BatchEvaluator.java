@@ -0,0 +1,278 @@
+
+package tetris;
+
+import java.util.Random;
+
+/**
+ * Liczy cechy wielu plansz naraz: sum wysokoci, dziury, przejcia w wierszach i nierwno.
+ * <p/>
+ * Plansze s ukadane w poprzek (struktura tablic): wiersz i wszystkich plansz ley w jednej tablicy
+ * {@code int[]}. S trzy cieki, dajce te same wyniki:
+ * {@link Mode#VECTOR} liczy wiele plansz jedn instrukcj przez Vector API (klasa {@code incubator/VectorLanes.java}),
+ * {@link Mode#LOOPS} to proste ptle po planszach bez rozgazie, ktre JIT moe, ale nie musi wektoryzowa,
+ * a {@link Mode#SCALAR} liczy plansza po planszy przez {@link BoardFeatures}.
+ * {@link #DEFAULT_MODE} to ptle: na JDK 17 s szybsze od Vector API, wic {@link Mode#VECTOR} trzeba wybra jawnie.
+ * Klasa cieki wektorowej ley poza gwnymi rdami, bo bez {@code --add-modules jdk.incubator.vector}
+ * nie da si jej skompilowa; jest adowana przez refleksj, jeli jest na ciece klas i modu jest wczony.
+ * {@link #main(String[])} sprawdza zgodno wszystkich dostpnych cieek i mierzy ich szybko.
+ */
+final class BatchEvaluator {
+
+    /**
+     * Najwiksza liczba plansz w jednej paczce.
+     */
+    static final int LANES = 256;
+
+    private static final int COLUMNS = BoardRules.BLOCKS_PER_ROW;
+
+    /**
+     * Wiersz przesunity o 1 w lewo z penymi cianami po obu stronach.
+     */
+    private static final int WALLS = 1 | (1 << (COLUMNS + 1));
+
+    /**
+     * Pary ssiednich pl w wierszu ze cianami.
+     */
+    private static final int PAIRS = (1 << (COLUMNS + 1)) - 1;
+
+    /**
+     * Sposb liczenia cech.
+     */
+    enum Mode {
+        SCALAR, LOOPS, VECTOR
+    }
+
+    /**
+     * cieka liczenia cech plansz uoonych w poprzek, adowana przez refleksj.
+     */
+    interface Lanes {
+
+        /**
+         * Liczy cechy plansz od 0 do {@code n}; {@code cells[i][k]} to wiersz i planszy k.
+         */
+        void evaluate(int[][] cells, int n, int[] heightSum, int[] holes, int[] rowTransitions, int[] bumpiness);
+    }
+
+    /**
+     * cieka wektorowa albo null, jeli modu {@code jdk.incubator.vector} nie jest wczony
+     * lub klasy {@code tetris.VectorLanes} nie ma na ciece klas.
+     */
+    private static final Lanes VECTOR_LANES = vectorLanes();
+
+    static final boolean VECTOR_AVAILABLE = VECTOR_LANES != null;
+
+    static final Mode DEFAULT_MODE = Mode.LOOPS;
+
+    private final Mode mode;
+
+    private final int[][] boards = new int[LANES][];
+
+    private int size;
+
+    private final int[][] cells = new int[BoardRules.ROWS][LANES];
+
+    private final int[] covered = new int[LANES];
+
+    private final int[][] columnHeights = new int[COLUMNS][LANES];
+
+    private final int[] heights = new int[COLUMNS];
+
+    final int[] heightSum = new int[LANES];
+
+    final int[] holes = new int[LANES];
+
+    final int[] rowTransitions = new int[LANES];
+
+    final int[] bumpiness = new int[LANES];
+
+    BatchEvaluator() {
+        this(DEFAULT_MODE);
+    }
+
+    /**
+     * @param mode sposb liczenia; {@link Mode#VECTOR} wymaga {@link #VECTOR_AVAILABLE}
+     */
+    BatchEvaluator(Mode mode) {
+        if (mode == Mode.VECTOR && !VECTOR_AVAILABLE) {
+            throw new IllegalStateException("Module jdk.incubator.vector is not enabled");
+        }
+        this.mode = mode;
+    }
+
+    private static Lanes vectorLanes() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            return (Lanes) Class.forName("tetris.VectorLanes").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Dodaje plansz do paczki. Tablica nie jest kopiowana i nie moe si zmieni przed {@link #evaluate()}.
+     *
+     * @param rows wiersze planszy
+     * @return Indeks planszy w tablicach wynikw.
+     */
+    int add(int[] rows) {
+        if (size == LANES) {
+            throw new IllegalStateException("Batch is full");
+        }
+        boards[size] = rows;
+        return size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Liczy cechy wszystkich dodanych plansz do tablic wynikw i oprnia paczk.
+     */
+    void evaluate() {
+        if (mode == Mode.SCALAR) {
+            for (int k = 0; k < size; k++) {
+                int[] rows = boards[k];
+                BoardFeatures.heights(rows, heights);
+                heightSum[k] = BoardFeatures.height(heights);
+                holes[k] = BoardFeatures.holes(rows);
+                rowTransitions[k] = BoardFeatures.rowTransitions(rows);
+                bumpiness[k] = BoardFeatures.bumpiness(heights);
+            }
+        } else {
+            transpose();
+            if (mode == Mode.VECTOR) {
+                VECTOR_LANES.evaluate(cells, size, heightSum, holes, rowTransitions, bumpiness);
+            } else {
+                evaluateLanes(size);
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            boards[k] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Ukada plansze w poprzek: {@code cells[i][k]} to wiersz i planszy k.
+     */
+    private void transpose() {
+        for (int k = 0; k < size; k++) {
+            int[] rows = boards[k];
+            for (int i = 0; i < BoardRules.ROWS; i++) {
+                cells[i][k] = rows[i];
+            }
+        }
+    }
+
+    /**
+     * Wysoko kolumny to liczba wierszy, w ktrych kolumna jest ju przykryta, liczc od gry,
+     * wic wysokoci i dziury wynikaj z tej samej maski przykrycia.
+     */
+    private void evaluateLanes(int n) {
+        for (int k = 0; k < n; k++) {
+            covered[k] = 0;
+            heightSum[k] = 0;
+            holes[k] = 0;
+            rowTransitions[k] = 0;
+            bumpiness[k] = 0;
+        }
+        for (int[] column : columnHeights) {
+            for (int k = 0; k < n; k++) {
+                column[k] = 0;
+            }
+        }
+
+        for (int i = 0; i < BoardRules.ROWS; i++) {
+            int[] row = cells[i];
+            for (int k = 0; k < n; k++) {
+                int bits = (row[k] << 1) | WALLS;
+                rowTransitions[k] += Integer.bitCount((bits ^ (bits >>> 1)) & PAIRS);
+                holes[k] += Integer.bitCount(covered[k] & ~row[k]);
+                covered[k] |= row[k];
+                heightSum[k] += Integer.bitCount(covered[k]);
+            }
+            for (int c = 0; c < COLUMNS; c++) {
+                int[] column = columnHeights[c];
+                for (int k = 0; k < n; k++) {
+                    column[k] += (covered[k] >>> c) & 1;
+                }
+            }
+        }
+
+        for (int c = 1; c < COLUMNS; c++) {
+            int[] left = columnHeights[c - 1];
+            int[] right = columnHeights[c];
+            for (int k = 0; k < n; k++) {
+                bumpiness[k] += Math.abs(right[k] - left[k]);
+            }
+        }
+    }
+
+    /**
+     * Sprawdza zgodno wszystkich dostpnych cieek ze skalarn na losowych planszach
+     * i mierzy liczb plansz na sekund.
+     * <p/>
+     * Uycie: {@code BatchEvaluator [paczki]}; kod wyjcia 1 oznacza rne wyniki.
+     * cieka wektorowa jest sprawdzana tylko z {@code --add-modules jdk.incubator.vector}.
+     */
+    public static void main(String[] args) {
+        int batches = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(1);
+        int[][] boards = new int[LANES][BoardRules.ROWS];
+        BatchEvaluator scalar = new BatchEvaluator(Mode.SCALAR);
+        BatchEvaluator[] evaluators = VECTOR_AVAILABLE
+                ? new BatchEvaluator[]{scalar, new BatchEvaluator(Mode.LOOPS), new BatchEvaluator(Mode.VECTOR)}
+                : new BatchEvaluator[]{scalar, new BatchEvaluator(Mode.LOOPS)};
+        System.out.println("default: " + DEFAULT_MODE + (VECTOR_AVAILABLE ? ", vector: " + VECTOR_LANES : ""));
+
+        for (int n = 0; n < 2000; n++) {
+            // Poowa paczek jak ruchy z jednej planszy (podobna wysoko), poowa cakiem losowa.
+            int surface = random.nextInt(BoardRules.ROWS + 1);
+            // Niepene paczki sprawdzaj tory za ostatni plansz.
+            int count = n % 3 == 0 ? 1 + random.nextInt(LANES) : LANES;
+            for (int b = 0; b < count; b++) {
+                int[] rows = boards[b];
+                int top = n % 2 == 0 ? Math.min(BoardRules.ROWS, surface + random.nextInt(3)) : random.nextInt(BoardRules.ROWS + 1);
+                for (int i = 0; i < BoardRules.ROWS; i++) {
+                    rows[i] = i < top ? 0 : random.nextInt(BoardRules.FULL_ROW + 1);
+                }
+                for (BatchEvaluator evaluator : evaluators) {
+                    evaluator.add(rows);
+                }
+            }
+            for (BatchEvaluator evaluator : evaluators) {
+                evaluator.evaluate();
+            }
+            for (BatchEvaluator evaluator : evaluators) {
+                for (int k = 0; k < count; k++) {
+                    if (evaluator.heightSum[k] != scalar.heightSum[k] || evaluator.holes[k] != scalar.holes[k]
+                            || evaluator.rowTransitions[k] != scalar.rowTransitions[k] || evaluator.bumpiness[k] != scalar.bumpiness[k]) {
+                        System.out.println("MISMATCH in " + evaluator.mode + " at batch " + n + ", board " + k);
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+
+        for (int round = 0; round < 2; round++) {
+            for (BatchEvaluator evaluator : evaluators) {
+                long start = System.nanoTime();
+                for (int n = 0; n < batches; n++) {
+                    for (int[] rows : boards) {
+                        evaluator.add(rows);
+                    }
+                    evaluator.evaluate();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(evaluator.mode + ": " + String.format("%.0f", batches * (double) LANES / seconds) + " boards/s");
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import javafx.application.Platform;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.binding.ObjectBinding;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -17,11 +18,17 @@ import javafx.event.EventHandler;
 import javafx.geometry.HorizontalDirection;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
+import javafx.scene.effect.Effect;
 import javafx.scene.effect.Light;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
 import javafx.util.Duration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashSet;
 import java.util.List;
@@ -40,17 +47,17 @@ final class Board extends StackPane {
     * Jest to obszar, w ktrym pojawiaj si tetrominos.
     * Domylnie s 2.
     */
-    private static final byte HIDDEN_ROWS = 2;
+    private static final byte HIDDEN_ROWS = BoardRules.HIDDEN_ROWS;
 
     /**
      * Liczba blokw na wiersz, domylnie jest to 10.
      */
-    private static final byte BLOCKS_PER_ROW = 10;
+    private static final byte BLOCKS_PER_ROW = BoardRules.BLOCKS_PER_ROW;
 
     /**
      * Liczba blokw na kolumn. Domylnie jest to 20.
      */
-    private static final byte BLOCKS_PER_COLUMN = 20;
+    private static final byte BLOCKS_PER_COLUMN = BoardRules.BLOCKS_PER_COLUMN;
 
     /**
      * Liczba maksymalnych podgldw.
@@ -87,11 +94,41 @@ final class Board extends StackPane {
      */
     private final Set<Animation> runningAnimations = new HashSet<>();
 
+    /**
+     * Animacje wstrzymane przez {@link #suspend()}, wznawiane przez {@link #resume()}.
+     */
+    private final List<Animation> suspendedAnimations = new ArrayList<>();
+
+    /**
+     * Wzy, ktrym {@link #suspend()} wyczy pami podrczn.
+     */
+    private final List<Node> uncachedNodes = new ArrayList<>();
+
+    /**
+     * To prawda, gdy plansza jest upiona przez {@link #suspend()}.
+     */
+    private boolean suspended = false;
+
     /**
      * Dwuwymiarowa tablica, ktra definiuje plansz. Jeli element jest pusty w macierzy, jest pusty, w przeciwnym razie jest zajty.
      */
     private final Rectangle[][] matrix = new Rectangle[BLOCKS_PER_COLUMN + HIDDEN_ROWS][BLOCKS_PER_ROW];
 
+    /**
+     * Zajte pola planszy jako maski bitowe wierszy. Na nich dziaaj zasady z {@link BoardRules}.
+     */
+    private final int[] occupancy = new int[BLOCKS_PER_COLUMN + HIDDEN_ROWS];
+
+    /**
+     * Kolor pl odtworzonych przez {@link #restore(BoardState)}; stan planszy nie pamita kolorw tetrominos.
+     */
+    private static final Color RESTORED_FILL = Color.GRAY;
+
+    /**
+     * Historia trybu wicze lub null, jeli tryb jest wyczony.
+     */
+    private PracticeHistory practiceHistory;
+
     /**
      * Lista tetrominos, ktre bd nastpne.
      */
@@ -129,6 +166,11 @@ final class Board extends StackPane {
 
     private DoubleProperty squareSize = new SimpleDoubleProperty();
 
+    /**
+     * Szybko wszystkich animacji planszy, domylnie 1.
+     */
+    private double animationRate = 1;
+
     /**
      * tworzenie tablicy.
      */
@@ -222,6 +264,7 @@ final class Board extends StackPane {
         rotateTransition = new RotateTransition(Duration.seconds(0.1));
         dropDownTransition = new TranslateTransition(Duration.seconds(0.1));
         dropDownTransition.setInterpolator(Interpolator.EASE_IN);
+        registerPausableAnimation(dropDownTransition);
 
         squareSize.bind(new DoubleBinding() {
             {
@@ -242,6 +285,7 @@ Rejestruje animacj
       * animacja @param Animacja.
      */
     private void registerPausableAnimation(final Animation animation) {
+        animation.setRate(animationRate);
         animation.statusProperty().addListener(new ChangeListener<Animation.Status>() {
             @Override
             public void changed(ObservableValue<? extends Animation.Status> observableValue, Animation.Status status, Animation.Status status2) {
@@ -280,7 +324,7 @@ Rejestruje animacj
 
      // Przenie go do waciwej pozycji
         // Od tetromino w rodku (I, O) lub w lewym rodku (kolejne ksztaty klockw).
-        x = (matrix[0].length - currentTetromino.getMatrix().length) / 2;
+        x = BoardRules.spawnX(currentTetromino.getMatrix());
         y = 0;
         // Przetumacz tetromino na pozycj wyjciow.
         currentTetromino.setTranslateY((y - Board.HIDDEN_ROWS) * getSquareSize());
@@ -298,7 +342,7 @@ Rejestruje animacj
      * Powiadomienie o tetrominie, e nie moe przej dalej.
      */
     private void tetrominoDropped() {
-        if (y == 0) {
+        if (BoardRules.isGameOver(y)) {
             // Jeli utwr nie mg si ruszy i nadal znajdujemy si w pocztkowej pozycji y, gra si skoczya.
             currentTetromino = null;
             waitingTetrominos.clear();
@@ -380,55 +424,22 @@ Rejestruje animacj
                 final int y = this.y + i;
 
                 if (tetrominoMatrix[i][j] == 1 && y < BLOCKS_PER_COLUMN + HIDDEN_ROWS && x < BLOCKS_PER_ROW) {
-                    final Rectangle rectangle = new Rectangle();
-
-                    ChangeListener<Number> changeListener = new ChangeListener<Number>() {
-                        @Override
-                        public void changed(ObservableValue<? extends Number> observableValue, Number number, Number number2) {
-                            rectangle.setWidth(number2.doubleValue());
-                            rectangle.setHeight(number2.doubleValue());
-                            rectangle.setTranslateX(number2.doubleValue() * x);
-                            rectangle.setTranslateY(number2.doubleValue() * ((Integer) rectangle.getProperties().get("y")));
-                        }
-                    };
-                    squareSize.addListener(new WeakChangeListener<>(changeListener));
-                    rectangle.setUserData(changeListener);
-                    rectangle.getProperties().put("y", y - HIDDEN_ROWS);
-                    rectangle.setWidth(squareSize.doubleValue());
-                    rectangle.setHeight(squareSize.doubleValue());
-                    rectangle.setTranslateX(squareSize.doubleValue() * x);
-                    rectangle.setTranslateY(squareSize.doubleValue() * ((Integer) rectangle.getProperties().get("y")));
-
-                    rectangle.setFill(currentTetromino.getFill());
                     ((Light.Distant) currentTetromino.getLighting().getLight()).azimuthProperty().set(225);
-                    rectangle.setEffect(currentTetromino.getLighting());
-
-                    rectangle.setArcHeight(7);
-                    rectangle.setArcWidth(7);
-                    // Przypisz prostokt do macierzy tablicy.
-                    matrix[y][x] = rectangle;
-                    getChildren().add(rectangle);
+                    addBlock(x, y, currentTetromino.getFill(), currentTetromino.getLighting());
                 }
             }
         }
 
+        BoardRules.merge(occupancy, tetrominoMatrix, x, y);
+
         ParallelTransition fallRowsTransition = new ParallelTransition();
         ParallelTransition deleteRowTransition = new ParallelTransition();
         int fall = 0;
 
         for (int i = y + currentTetromino.getMatrix().length - 1; i >= 0; i--) {
             if (i < matrix.length) {
-                boolean rowComplete = i >= y;
+                boolean rowComplete = i >= y && BoardRules.isRowFull(occupancy, i);
 
-                // Zamy, e wiersz jest kompletny. Udowodnijmy, e jest odwrotnie.
-                if (rowComplete) {
-                    for (int j = 0; j < matrix[i].length; j++) {
-                        if (matrix[i][j] == null) {
-                            rowComplete = false;
-                            break;
-                        }
-                    }
-                }
                 if (rowComplete) {
                     deleteRowTransition.getChildren().add(deleteRow(i));
                     fall++;
@@ -437,6 +448,10 @@ Rejestruje animacj
                 }
             }
         }
+        BoardRules.clearFullRows(occupancy);
+        if (practiceHistory != null) {
+            practiceHistory.push(getState());
+        }
         final int f = fall;
         fallRowsTransition.setOnFinished(new EventHandler<ActionEvent>() {
             public void handle(ActionEvent actionEvent) {
@@ -474,6 +489,122 @@ Rejestruje animacj
         notifyOnDropped();
     }
 
+    /**
+     * Tworzy prostokt zajtego pola, dodaje go do planszy i przypisuje do macierzy.
+     *
+     * @param x kolumna
+     * @param y wiersz macierzy, liczc ukryte wiersze
+     */
+    private void addBlock(final int x, int y, Paint fill, Effect effect) {
+        final Rectangle rectangle = new Rectangle();
+
+        ChangeListener<Number> changeListener = new ChangeListener<Number>() {
+            @Override
+            public void changed(ObservableValue<? extends Number> observableValue, Number number, Number number2) {
+                rectangle.setWidth(number2.doubleValue());
+                rectangle.setHeight(number2.doubleValue());
+                rectangle.setTranslateX(number2.doubleValue() * x);
+                rectangle.setTranslateY(number2.doubleValue() * ((Integer) rectangle.getProperties().get("y")));
+            }
+        };
+        squareSize.addListener(new WeakChangeListener<>(changeListener));
+        rectangle.setUserData(changeListener);
+        rectangle.getProperties().put("y", y - HIDDEN_ROWS);
+        rectangle.setWidth(squareSize.doubleValue());
+        rectangle.setHeight(squareSize.doubleValue());
+        rectangle.setTranslateX(squareSize.doubleValue() * x);
+        rectangle.setTranslateY(squareSize.doubleValue() * ((Integer) rectangle.getProperties().get("y")));
+
+        rectangle.setFill(fill);
+        rectangle.setEffect(effect);
+
+        rectangle.setArcHeight(7);
+        rectangle.setArcWidth(7);
+        // Przypisz prostokt do macierzy tablicy.
+        matrix[y][x] = rectangle;
+        getChildren().add(rectangle);
+    }
+
+    /**
+     * Zastpuje zajte pola planszy stanem, np. z {@link PracticeHistory}. Kolejka tetrominos i wynik si nie zmieniaj.
+     * Jeli biece tetromino nachodzi na odtworzone pola, wraca do pozycji pocztkowej.
+     *
+     * @param state stan planszy
+     */
+    void restore(BoardState state) {
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < BLOCKS_PER_ROW; j++) {
+                if (matrix[i][j] != null) {
+                    getChildren().remove(matrix[i][j]);
+                    matrix[i][j] = null;
+                }
+            }
+        }
+        state.copyRows(occupancy);
+        for (int i = 0; i < occupancy.length; i++) {
+            for (int j = 0; j < BLOCKS_PER_ROW; j++) {
+                if ((occupancy[i] & (1 << j)) != 0) {
+                    addBlock(j, i, RESTORED_FILL, null);
+                }
+            }
+        }
+
+        if (currentTetromino != null && intersectsWithBoard(currentTetromino.getMatrix(), x, y)) {
+            moveTransition.stop();
+            moveDownFastTransition.stop();
+            dropDownTransition.stop();
+            translateTransition.stop();
+            isDropping = false;
+            moving = false;
+            x = BoardRules.spawnX(currentTetromino.getMatrix());
+            y = 0;
+            currentTetromino.setTranslateY((y - Board.HIDDEN_ROWS) * getSquareSize());
+            currentTetromino.setTranslateX(x * getSquareSize());
+            moveDown();
+        }
+    }
+
+    /**
+     * Wcza lub wycza tryb wicze: kade ustawienie tetromino trafia do {@link PracticeHistory}
+     * i mona je cofn przez {@link #undo()} i ponowi przez {@link #redo()}.
+     */
+    void setPracticeMode(boolean enabled) {
+        practiceHistory = enabled ? new PracticeHistory(getState()) : null;
+    }
+
+    /**
+     * @return Historia trybu wicze, np. do wyboru gazi, lub null, jeli tryb jest wyczony.
+     */
+    PracticeHistory getPracticeHistory() {
+        return practiceHistory;
+    }
+
+    /**
+     * Cofa ostatnie ustawienie tetromino w trybie wicze.
+     *
+     * @return Fasz, jeli tryb jest wyczony lub nie ma czego cofn.
+     */
+    boolean undo() {
+        if (practiceHistory == null || !practiceHistory.undo()) {
+            return false;
+        }
+        restore(practiceHistory.getState());
+        return true;
+    }
+
+    /**
+     * Ponawia cofnite ustawienie tetromino w trybie wicze.
+     *
+     * @return Fasz, jeli tryb jest wyczony lub nie ma czego ponowi.
+     */
+    boolean redo() {
+        if (practiceHistory == null || !practiceHistory.redo()) {
+            return false;
+        }
+        restore(practiceHistory.getState());
+        return true;
+    }
+
     /**
      * @param i  indeks wiersza.
      * @param przez Liczbe wierszy.
@@ -552,6 +683,10 @@ Rejestruje animacj
                 matrix[i][j] = null;
             }
         }
+        Arrays.fill(occupancy, 0);
+        if (practiceHistory != null) {
+            practiceHistory = new PracticeHistory(BoardState.EMPTY);
+        }
         getChildren().clear();
         getChildren().remove(currentTetromino);
         currentTetromino = null;
@@ -570,27 +705,7 @@ Rejestruje animacj
      * @return * @return Prawda, jeli przecina si z plansz, w przeciwnym razie jest faszywa.
      */
     private boolean intersectsWithBoard(final int[][] targetMatrix, int targetX, int targetY) {
-        Rectangle[][] boardMatrix = matrix;
-
-        for (int i = 0; i < targetMatrix.length; i++) {
-            for (int j = 0; j < targetMatrix[i].length; j++) {
-
-                boolean boardBlocks = false;
-                int x = targetX + j;
-                int y = targetY + i;
-
-                if (x < 0 || x >= boardMatrix[i].length || y >= boardMatrix.length) {
-                    boardBlocks = true;
-                } else if (boardMatrix[y][x] != null) {
-                    boardBlocks = true;
-                }
-
-                if (boardBlocks && targetMatrix[i][j] == 1) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return BoardRules.intersects(occupancy, targetMatrix, targetX, targetY);
     }
 
     /**
@@ -633,7 +748,6 @@ Rejestruje animacj
                 tetrominoDropped();
             }
         });
-        registerPausableAnimation(dropDownTransition);
         dropDownTransition.playFromStart();
 
     }
@@ -649,20 +763,7 @@ Rejestruje animacj
         if (currentTetromino == null) {
             result = false;
         } else {
-            int[][] matrix = currentTetromino.getMatrix();
-
-            int[][] newMatrix = new int[matrix.length][matrix.length];
-
-
-            for (int i = 0; i < matrix.length; i++) {
-                for (int j = 0; j < matrix[i].length; j++) {
-                    if (direction == HorizontalDirection.RIGHT) {
-                        newMatrix[j][matrix.length - 1 - i] = matrix[i][j];
-                    } else {
-                        newMatrix[matrix[i].length - 1 - j][i] = matrix[i][j];
-                    }
-                }
-            }
+            int[][] newMatrix = BoardRules.rotate(currentTetromino.getMatrix(), direction == HorizontalDirection.RIGHT);
 
             if (!intersectsWithBoard(newMatrix, x, y)) {
                 currentTetromino.setMatrix(newMatrix);
@@ -799,6 +900,90 @@ Rejestruje animacj
         requestFocus();
     }
 
+    /**
+     * Usypia plansz, gdy nikt na ni nie patrzy: wstrzymuje uruchomione animacje, ukrywa plansz,
+     * aby nie bya rysowana razem z efektami owietlenia, i zwalnia pami podrczn wzw.
+     * W odrnieniu od {@link #pause()} pamita, ktre animacje wstrzyma, wic {@link #resume()}
+     * nie wznowi gry zatrzymanej przez gracza.
+     *
+     * @see #resume()
+     */
+    void suspend() {
+        if (suspended) {
+            return;
+        }
+        suspended = true;
+        for (Animation animation : runningAnimations) {
+            if (animation.getStatus() == Animation.Status.RUNNING) {
+                animation.pause();
+                suspendedAnimations.add(animation);
+            }
+        }
+        for (Node node : getChildren()) {
+            if (node.isCache()) {
+                node.setCache(false);
+                uncachedNodes.add(node);
+            }
+        }
+        setVisible(false);
+    }
+
+    /**
+     * Budzi plansz upion przez {@link #suspend()}.
+     */
+    void resume() {
+        if (!suspended) {
+            return;
+        }
+        suspended = false;
+        for (Node node : uncachedNodes) {
+            node.setCache(true);
+        }
+        uncachedNodes.clear();
+        setVisible(true);
+        for (Animation animation : suspendedAnimations) {
+            if (animation.getStatus() == Animation.Status.PAUSED) {
+                animation.play();
+            }
+        }
+        suspendedAnimations.clear();
+        requestFocus();
+    }
+
+    boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Zmienia szybko wszystkich animacji planszy, np. aby testy rozgryway gry szybciej.
+     *
+     * @param rate szybko, 1 to normalna
+     */
+    void setAnimationRate(double rate) {
+        animationRate = rate;
+        moveTransition.setRate(rate);
+        moveDownFastTransition.setRate(rate);
+        translateTransition.setRate(rate);
+        dropDownTransition.setRate(rate);
+        for (Animation animation : runningAnimations) {
+            animation.setRate(rate);
+        }
+    }
+
+    /**
+     * @return Liczba animacji, ktre s teraz uruchomione lub wstrzymane.
+     */
+    int getRunningAnimationCount() {
+        return runningAnimations.size();
+    }
+
+    /**
+     * @return Rozmiar jednego pola planszy.
+     */
+    ReadOnlyDoubleProperty squareSizeProperty() {
+        return squareSize;
+    }
+
     /**
      * Dostaje oczekujce tetrominosy, ktre maj zosta odrodzone.
      * <p/>
@@ -814,6 +999,47 @@ Rejestruje animacj
         return squareSize.get();
     }
 
+    /**
+     * Zajte pola planszy jako maski bitowe wierszy, patrz {@link BoardRules}. Tablicy nie wolno zmienia.
+     *
+     * @return Wiersze planszy.
+     */
+    int[] getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Niezmienna migawka zajtych pl, np. jako korze przeszukiwania lub pocztek {@link PracticeHistory}.
+     *
+     * @return Stan planszy bez biecego tetromino.
+     */
+    BoardState getState() {
+        return BoardState.of(occupancy);
+    }
+
+    /**
+     * @return Tetromino, ktre wanie spada, lub null.
+     */
+    Tetromino getCurrentTetromino() {
+        return currentTetromino;
+    }
+
+    int getCurrentX() {
+        return x;
+    }
+
+    int getCurrentY() {
+        return y;
+    }
+
+    /**
+     * @return Liczba obrotw biecego tetromino w prawo, od 0 do 3.
+     */
+    int getCurrentRotation() {
+        int quarters = (int) Math.round(rotateTransition.getToAngle() / 90);
+        return (quarters % 4 + 4) % 4;
+    }
+
     /**
      * Dodaje suchacza do tablicy, ktra otrzymuje powiadomienia o okrelonych wydarzeniach.
      *
@@ -832,6 +1058,13 @@ Rejestruje animacj
         boardListeners.remove(boardListener);
     }
 
+    /**
+     * @return Suchacze planszy, tylko do odczytu.
+     */
+    List<BoardListener> getBoardListeners() {
+        return Collections.unmodifiableList(boardListeners);
+    }
+
     /**
      * Pozwala sucha okrelonych wydarze na planszy.
      */
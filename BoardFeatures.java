@@ -0,0 +1,147 @@
+
+package tetris;
+
+/**
+ * Cechy planszy uywane przez bota do oceny ustawie tetromino.
+ * <p/>
+ * Plansza ma posta wierszy z {@link BoardRules}.
+ */
+final class BoardFeatures {
+
+    static final int HOLES = 0;
+
+    static final int HEIGHT = 1;
+
+    static final int BUMPINESS = 2;
+
+    static final int WELLS = 3;
+
+    /**
+     * Nagrody za 1, 2, 3 i 4 wiersze usunite jednym tetromino, tak jak w {@link Board.BoardListener#onRowsEliminated(int)}.
+     */
+    static final int LINES_1 = 4;
+
+    static final int LINES_2 = 5;
+
+    static final int LINES_3 = 6;
+
+    static final int LINES_4 = 7;
+
+    /**
+     * Liczba wag w ocenie.
+     */
+    static final int COUNT = 8;
+
+    static final String[] NAMES = {"holes", "height", "bumpiness", "wells", "lines1", "lines2", "lines3", "lines4"};
+
+    private BoardFeatures() {
+    }
+
+    /**
+     * Wpisuje wysokoci kolumn do tablicy.
+     *
+     * @param rows    wiersze planszy
+     * @param heights tablica o dugoci {@link BoardRules#BLOCKS_PER_ROW}
+     */
+    static void heights(int[] rows, int[] heights) {
+        for (int c = 0; c < BoardRules.BLOCKS_PER_ROW; c++) {
+            heights[c] = 0;
+        }
+        int seen = 0;
+        for (int i = 0; i < rows.length && seen != BoardRules.FULL_ROW; i++) {
+            int top = rows[i] & ~seen;
+            while (top != 0) {
+                int c = Integer.numberOfTrailingZeros(top);
+                heights[c] = rows.length - i;
+                top &= top - 1;
+            }
+            seen |= rows[i];
+        }
+    }
+
+    /**
+     * @return Liczba pustych pl, nad ktrymi w tej samej kolumnie jest zajte pole.
+     */
+    static int holes(int[] rows) {
+        int holes = 0;
+        int covered = 0;
+        for (int i = 0; i < rows.length; i++) {
+            holes += Integer.bitCount(covered & ~rows[i]);
+            covered |= rows[i];
+        }
+        return holes;
+    }
+
+    /**
+     * @return Liczba przej midzy polem pustym a zajtym w wierszach; ciany licz si jako zajte.
+     */
+    static int rowTransitions(int[] rows) {
+        int transitions = 0;
+        int walls = 1 | (1 << (BoardRules.BLOCKS_PER_ROW + 1));
+        int pairs = (1 << (BoardRules.BLOCKS_PER_ROW + 1)) - 1;
+        for (int row : rows) {
+            int bits = (row << 1) | walls;
+            transitions += Integer.bitCount((bits ^ (bits >>> 1)) & pairs);
+        }
+        return transitions;
+    }
+
+    /**
+     * @return Suma rnic wysokoci ssiednich kolumn.
+     */
+    static int bumpiness(int[] heights) {
+        int bumpiness = 0;
+        for (int c = 1; c < BoardRules.BLOCKS_PER_ROW; c++) {
+            bumpiness += Math.abs(heights[c] - heights[c - 1]);
+        }
+        return bumpiness;
+    }
+
+    /**
+     * @return Suma gbokoci studni, czyli kolumn niszych od obu ssiadw (ciana liczy si jako pena).
+     */
+    static int wells(int[] heights) {
+        int wells = 0;
+        for (int c = 0; c < BoardRules.BLOCKS_PER_ROW; c++) {
+            int left = c == 0 ? BoardRules.ROWS : heights[c - 1];
+            int right = c == BoardRules.BLOCKS_PER_ROW - 1 ? BoardRules.ROWS : heights[c + 1];
+            int depth = Math.min(left, right) - heights[c];
+            if (depth > 0) {
+                wells += depth;
+            }
+        }
+        return wells;
+    }
+
+    /**
+     * @return Suma wysokoci kolumn.
+     */
+    static int height(int[] heights) {
+        int height = 0;
+        for (int c = 0; c < BoardRules.BLOCKS_PER_ROW; c++) {
+            height += heights[c];
+        }
+        return height;
+    }
+
+    /**
+     * Ocenia plansz po ustawieniu tetromino.
+     *
+     * @param rows    wiersze planszy po usuniciu penych wierszy
+     * @param cleared liczba wierszy usunitych przez to ustawienie
+     * @param weights wagi o dugoci {@link #COUNT}
+     * @param heights tablica robocza o dugoci {@link BoardRules#BLOCKS_PER_ROW}
+     * @return Ocena, im wiksza, tym lepiej.
+     */
+    static double evaluate(int[] rows, int cleared, double[] weights, int[] heights) {
+        heights(rows, heights);
+        double score = weights[HOLES] * holes(rows)
+                + weights[HEIGHT] * height(heights)
+                + weights[BUMPINESS] * bumpiness(heights)
+                + weights[WELLS] * wells(heights);
+        if (cleared > 0) {
+            score += weights[LINES_1 + cleared - 1];
+        }
+        return score;
+    }
+}
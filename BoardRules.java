@@ -0,0 +1,261 @@
+
+package tetris;
+
+/**
+ * Zasady gry niezalene od JavaFX: kolizje, scalanie, usuwanie penych wierszy i obrt.
+ * <p/>
+ * Plansza jest tablic wierszy, a kady wiersz mask bitow zajtych pl (bit j to kolumna j).
+ * Wiersz 0 jest najwyej, pierwsze {@link #HIDDEN_ROWS} wierszy jest ukrytych nad plansz.
+ * Z tych metod korzysta {@link Board} oraz wszystkie narzdzia dziaajce bez interfejsu.
+ */
+final class BoardRules {
+
+    /**
+     * Liczba ukrytych rzdw nad plansz, w ktrych pojawiaj si tetrominos.
+     */
+    static final byte HIDDEN_ROWS = 2;
+
+    /**
+     * Liczba blokw na wiersz.
+     */
+    static final byte BLOCKS_PER_ROW = 10;
+
+    /**
+     * Liczba widocznych blokw na kolumn.
+     */
+    static final byte BLOCKS_PER_COLUMN = 20;
+
+    /**
+     * Liczba wszystkich wierszy planszy, razem z ukrytymi.
+     */
+    static final int ROWS = BLOCKS_PER_COLUMN + HIDDEN_ROWS;
+
+    /**
+     * Maska penego wiersza.
+     */
+    static final int FULL_ROW = (1 << BLOCKS_PER_ROW) - 1;
+
+    /**
+     * Ksztaty tetrominos w pozycji pocztkowej, w kolejnoci {@link #SHAPE_NAMES}.
+     * To te same definicje i ta sama kolejno co w {@link Tetromino}: I ma trzy pola, a X (plus) i Y po pi.
+     * {@link Tetromino#random} losuje tylko spord tych dziewiciu.
+     */
+    static final int[][][] SHAPES = {
+            {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}},
+            {{1, 0, 0}, {1, 1, 1}, {0, 0, 0}},
+            {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}},
+            {{1, 1}, {1, 1}},
+            {{0, 1, 1}, {1, 1, 0}, {0, 0, 0}},
+            {{0, 1, 0}, {1, 1, 1}, {0, 0, 0}},
+            {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}},
+            {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}},
+            {{0, 0, 1}, {1, 1, 1}, {1, 0, 0}}
+    };
+
+    static final char[] SHAPE_NAMES = {'I', 'J', 'L', 'O', 'S', 'T', 'Z', 'X', 'Y'};
+
+    /**
+     * Maski wierszy dla [ksztat][obrt], gdzie obrt to liczba obrotw w prawo od pozycji pocztkowej.
+     */
+    static final int[][][] ROTATIONS = new int[SHAPES.length][4][];
+
+    static {
+        for (int s = 0; s < SHAPES.length; s++) {
+            int[][] matrix = SHAPES[s];
+            for (int r = 0; r < 4; r++) {
+                ROTATIONS[s][r] = rowMasks(matrix);
+                matrix = rotate(matrix, true);
+            }
+        }
+    }
+
+    private BoardRules() {
+    }
+
+    /**
+     * @param row wiersz macierzy tetromino
+     * @return Maska bitowa zajtych pl wiersza.
+     */
+    static int rowMask(int[] row) {
+        int mask = 0;
+        for (int j = 0; j < row.length; j++) {
+            if (row[j] == 1) {
+                mask |= 1 << j;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param matrix macierz tetromino
+     * @return Maski bitowe wszystkich wierszy macierzy.
+     */
+    static int[] rowMasks(int[][] matrix) {
+        int[] masks = new int[matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            masks[i] = rowMask(matrix[i]);
+        }
+        return masks;
+    }
+
+    /**
+     * Sprawdza, czy jeden wiersz tetromino przecina si z plansz lub wychodzi poza lew, praw albo doln krawd.
+     */
+    private static boolean blocked(int[] rows, int mask, int x, int y) {
+        if (mask == 0) {
+            return false;
+        }
+        if (y >= rows.length) {
+            return true;
+        }
+        return blocked(rows[y], mask, x);
+    }
+
+    /**
+     * Sprawdza, czy niepusty wiersz tetromino przesunity do X przecina si z wierszem planszy
+     * lub wychodzi poza lew albo praw krawd.
+     */
+    static boolean blocked(int row, int mask, int x) {
+        if (x < 0 && (mask & ((1 << -x) - 1)) != 0) {
+            return true;
+        }
+        int shifted = shift(mask, x);
+        return (shifted & ~FULL_ROW) != 0 || (row & shifted) != 0;
+    }
+
+    /**
+     * @return Maska wiersza tetromino przesunita do pozycji X, bez obcinania do szerokoci planszy.
+     */
+    static int shift(int mask, int x) {
+        return x < 0 ? mask >>> -x : mask << x;
+    }
+
+    /**
+     * Oblicza, czy tetromino przecinaoby si z plansz.
+     * Przecina si, jeli uderzy w zajte pole lub przekroczy granic lew, praw lub doln.
+     *
+     * @param rows    wiersze planszy
+     * @param matrix  macierz tetromino
+     * @param targetX docelowa pozycja X
+     * @param targetY docelowa pozycja Y
+     * @return Prawda, jeli przecina si z plansz.
+     */
+    static boolean intersects(int[] rows, int[][] matrix, int targetX, int targetY) {
+        for (int i = 0; i < matrix.length; i++) {
+            if (blocked(rows, rowMask(matrix[i]), targetX, targetY + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * To samo co {@link #intersects(int[], int[][], int, int)}, ale dla masek z {@link #rowMasks(int[][])}.
+     */
+    static boolean intersects(int[] rows, int[] masks, int targetX, int targetY) {
+        for (int i = 0; i < masks.length; i++) {
+            if (blocked(rows, masks[i], targetX, targetY + i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zwraca najnisz pozycj Y, do ktrej tetromino moe spa z pozycji Y.
+     */
+    static int dropY(int[] rows, int[] masks, int x, int y) {
+        while (!intersects(rows, masks, x, y + 1)) {
+            y++;
+        }
+        return y;
+    }
+
+    /**
+     * Scala tetromino z plansz.
+     *
+     * @param rows   wiersze planszy
+     * @param matrix macierz tetromino
+     * @param x      pozycja X
+     * @param y      pozycja Y
+     */
+    static void merge(int[] rows, int[][] matrix, int x, int y) {
+        merge(rows, rowMasks(matrix), x, y);
+    }
+
+    /**
+     * To samo co {@link #merge(int[], int[][], int, int)}, ale dla masek z {@link #rowMasks(int[][])}.
+     */
+    static void merge(int[] rows, int[] masks, int x, int y) {
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0 && y + i < rows.length) {
+                rows[y + i] |= shift(masks[i], x) & FULL_ROW;
+            }
+        }
+    }
+
+    static boolean isRowFull(int[] rows, int row) {
+        return rows[row] == FULL_ROW;
+    }
+
+    /**
+     * Usuwa pene wiersze, a wiersze nad nimi opadaj.
+     *
+     * @param rows wiersze planszy
+     * @return Liczba usunitych wierszy.
+     */
+    static int clearFullRows(int[] rows) {
+        int fall = 0;
+        for (int i = rows.length - 1; i >= 0; i--) {
+            if (rows[i] == FULL_ROW) {
+                fall++;
+            } else if (fall > 0) {
+                rows[i + fall] = rows[i];
+            }
+        }
+        for (int i = 0; i < fall; i++) {
+            rows[i] = 0;
+        }
+        return fall;
+    }
+
+    /**
+     * Obraca macierz tetromino o 90 stopni.
+     *
+     * @param matrix    macierz tetromino
+     * @param clockwise prawda dla obrotu w prawo
+     * @return Nowa macierz.
+     */
+    static int[][] rotate(int[][] matrix, boolean clockwise) {
+        int[][] newMatrix = new int[matrix.length][matrix.length];
+
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (clockwise) {
+                    newMatrix[j][matrix.length - 1 - i] = matrix[i][j];
+                } else {
+                    newMatrix[matrix[i].length - 1 - j][i] = matrix[i][j];
+                }
+            }
+        }
+        return newMatrix;
+    }
+
+    /**
+     * @param matrix macierz tetromino
+     * @return Pozycja X, w ktrej pojawia si tetromino: w rodku (O) lub w lewym rodku.
+     */
+    static int spawnX(int[][] matrix) {
+        return (BLOCKS_PER_ROW - matrix.length) / 2;
+    }
+
+    /**
+     * Jeli tetromino nie moe si ruszy z pozycji pocztkowej Y, gra si koczy.
+     *
+     * @param y pozycja Y, w ktrej tetromino zostao zatrzymane
+     * @return Prawda, jeli to koniec gry.
+     */
+    static boolean isGameOver(int y) {
+        return y == 0;
+    }
+}
@@ -0,0 +1,302 @@
+
+package tetris;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Niezmienny stan planszy: wiersze z {@link BoardRules} podzielone na kawaki po {@link #CHUNK_ROWS} wierszy.
+ * <p/>
+ * {@link #lock(int[], int, int)} zwraca nowy stan, ktry kopiuje tylko kawaki ze zmienionymi wierszami,
+ * a reszt dzieli z rodzicem. Puste kawaki wszystkich stanw to jedna tablica. Dziki temu drzewo
+ * przeszukiwania lub historia gry zajmuje pami proporcjonaln do zmienionych wierszy, a nie do liczby stanw
+ * razy rozmiar planszy. Stan mona bezpiecznie dzieli midzy wtkami.
+ */
+final class BoardState {
+
+    /**
+     * Liczba wierszy w jednym kawaku.
+     */
+    static final int CHUNK_ROWS = 4;
+
+    private static final int CHUNKS = (BoardRules.ROWS + CHUNK_ROWS - 1) / CHUNK_ROWS;
+
+    private static final int[] EMPTY_CHUNK = new int[CHUNK_ROWS];
+
+    static final BoardState EMPTY;
+
+    static {
+        int[][] chunks = new int[CHUNKS][];
+        for (int c = 0; c < CHUNKS; c++) {
+            chunks[c] = EMPTY_CHUNK;
+        }
+        EMPTY = new BoardState(chunks, 0);
+    }
+
+    /**
+     * Kawaki wierszy; ani ta tablica, ani kawaki nie s zmieniane po utworzeniu stanu.
+     */
+    private final int[][] chunks;
+
+    private final int cleared;
+
+    private int hash;
+
+    private BoardState(int[][] chunks, int cleared) {
+        this.chunks = chunks;
+        this.cleared = cleared;
+    }
+
+    /**
+     * @param rows wiersze planszy, s kopiowane
+     * @return Stan z tymi wierszami.
+     */
+    static BoardState of(int[] rows) {
+        if (rows.length != BoardRules.ROWS) {
+            throw new IllegalArgumentException("Expected " + BoardRules.ROWS + " rows, got " + rows.length);
+        }
+        int[][] chunks = new int[CHUNKS][];
+        for (int c = 0; c < CHUNKS; c++) {
+            chunks[c] = chunk(rows, c * CHUNK_ROWS);
+        }
+        return new BoardState(chunks, 0);
+    }
+
+    /**
+     * @return Kawaek z wierszami od {@code from}, albo wsplny pusty kawaek.
+     */
+    private static int[] chunk(int[] rows, int from) {
+        int[] chunk = null;
+        for (int r = 0; r < CHUNK_ROWS && from + r < rows.length; r++) {
+            if (rows[from + r] != 0) {
+                if (chunk == null) {
+                    chunk = new int[CHUNK_ROWS];
+                }
+                chunk[r] = rows[from + r];
+            }
+        }
+        return chunk == null ? EMPTY_CHUNK : chunk;
+    }
+
+    /**
+     * @param i numer wiersza, od 0 (najwyszy ukryty) do {@link BoardRules#ROWS} - 1
+     * @return Maska bitowa zajtych pl wiersza.
+     */
+    int row(int i) {
+        return chunks[i / CHUNK_ROWS][i % CHUNK_ROWS];
+    }
+
+    /**
+     * Kopiuje wiersze do tablicy, np. dla {@link BoardFeatures}.
+     *
+     * @param rows tablica o dugoci {@link BoardRules#ROWS}
+     */
+    void copyRows(int[] rows) {
+        for (int i = 0; i < BoardRules.ROWS; i++) {
+            rows[i] = row(i);
+        }
+    }
+
+    /**
+     * @return Liczba wierszy usunitych przez ustawienie, ktre utworzyo ten stan.
+     */
+    int getCleared() {
+        return cleared;
+    }
+
+    /**
+     * To samo co {@link BoardRules#intersects(int[], int[], int, int)} dla tego stanu.
+     */
+    boolean intersects(int[] masks, int x, int y) {
+        for (int i = 0; i < masks.length; i++) {
+            if (masks[i] != 0 && (y + i >= BoardRules.ROWS || BoardRules.blocked(row(y + i), masks[i], x))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * To samo co {@link BoardRules#dropY(int[], int[], int, int)} dla tego stanu.
+     */
+    int dropY(int[] masks, int x, int y) {
+        while (!intersects(masks, x, y + 1)) {
+            y++;
+        }
+        return y;
+    }
+
+    /**
+     * Scala tetromino z plansz i usuwa pene wiersze, jak {@link BoardRules#merge(int[], int[], int, int)}
+     * i {@link BoardRules#clearFullRows(int[])}. Ten stan si nie zmienia.
+     *
+     * @param masks maski z {@link BoardRules#ROTATIONS}
+     * @param x     pozycja X
+     * @param y     pozycja Y, w ktrej tetromino si zatrzymao
+     * @return Nowy stan dzielcy niezmienione kawaki z tym.
+     */
+    BoardState lock(int[] masks, int x, int y) {
+        int[][] next = chunks.clone();
+        int full = 0;
+        int lowest = -1;
+        for (int i = 0; i < masks.length; i++) {
+            int r = y + i;
+            if (masks[i] == 0 || r >= BoardRules.ROWS) {
+                continue;
+            }
+            int c = r / CHUNK_ROWS;
+            if (next[c] == chunks[c]) {
+                next[c] = chunks[c].clone();
+            }
+            next[c][r % CHUNK_ROWS] |= BoardRules.shift(masks[i], x) & BoardRules.FULL_ROW;
+            if (next[c][r % CHUNK_ROWS] == BoardRules.FULL_ROW) {
+                full++;
+                lowest = r;
+            }
+        }
+        if (full == 0) {
+            return new BoardState(next, 0);
+        }
+
+        // Wiersze nad najniszym usunitym opadaj, wic te kawaki trzeba zbudowa od nowa.
+        int[] rows = new int[lowest + 1];
+        for (int i = 0; i <= lowest; i++) {
+            rows[i] = next[i / CHUNK_ROWS][i % CHUNK_ROWS];
+        }
+        BoardRules.clearFullRows(rows);
+        int last = lowest / CHUNK_ROWS;
+        for (int c = 0; c < last; c++) {
+            next[c] = chunk(rows, c * CHUNK_ROWS);
+        }
+        // Ostatni kawaek ma te wiersze poniej najniszego usunitego, ktrych nie ruszano.
+        int[] tail = next[last] == chunks[last] ? chunks[last].clone() : next[last];
+        for (int r = last * CHUNK_ROWS; r <= lowest; r++) {
+            tail[r % CHUNK_ROWS] = rows[r];
+        }
+        next[last] = isEmpty(tail) ? EMPTY_CHUNK : tail;
+        return new BoardState(next, full);
+    }
+
+    /**
+     * @param shape    indeks ksztatu w {@link BoardRules#SHAPES}
+     * @param rotation liczba obrotw w prawo
+     */
+    BoardState lock(int shape, int rotation, int x, int y) {
+        return lock(BoardRules.ROTATIONS[shape][rotation], x, y);
+    }
+
+    private static boolean isEmpty(int[] chunk) {
+        for (int row : chunk) {
+            if (row != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stany s rwne, jeli maj te same wiersze; liczba usunitych wierszy si nie liczy.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BoardState)) {
+            return false;
+        }
+        BoardState other = (BoardState) o;
+        for (int c = 0; c < CHUNKS; c++) {
+            if (chunks[c] != other.chunks[c]) {
+                for (int r = 0; r < CHUNK_ROWS; r++) {
+                    if (chunks[c][r] != other.chunks[c][r]) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = 0; i < BoardRules.ROWS; i++) {
+                h = 31 * h + row(i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BoardRules.ROWS; i++) {
+            for (int j = 0; j < BoardRules.BLOCKS_PER_ROW; j++) {
+                sb.append((row(i) & (1 << j)) != 0 ? '#' : '.');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Buduje losowe drzewo stanw, sprawdza je z {@link BoardRules} na tablicach i wypisuje,
+     * ile wierszy naprawd zajmuj wszystkie stany razem, a ile zajyby pene kopie.
+     * <p/>
+     * Uycie: {@code BoardState [stany]}; kod wyjcia 1 oznacza rne wyniki.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(1);
+        BoardState[] states = new BoardState[count];
+        int[][] copies = new int[count][];
+        states[0] = EMPTY;
+        copies[0] = new int[BoardRules.ROWS];
+        int[] rows = new int[BoardRules.ROWS];
+
+        for (int n = 1; n < count; n++) {
+            // Rodzicem jest jeden z ostatnich stanw, wic powstaje drzewo, a nie tylko cieka.
+            int parent = Math.max(0, n - 1 - random.nextInt(Math.min(n, 8)));
+            BoardState state = states[parent];
+            int shape = random.nextInt(BoardRules.SHAPES.length);
+            int rotation = random.nextInt(4);
+            int[] masks = BoardRules.ROTATIONS[shape][rotation];
+            int x = random.nextInt(BoardRules.BLOCKS_PER_ROW) - 1;
+            if (state.intersects(masks, x, 0) || BoardRules.isGameOver(state.dropY(masks, x, 0))) {
+                state = EMPTY;
+                parent = 0;
+                if (state.intersects(masks, x, 0)) {
+                    states[n] = EMPTY;
+                    copies[n] = copies[0];
+                    continue;
+                }
+            }
+            int y = state.dropY(masks, x, 0);
+            states[n] = state.lock(masks, x, y);
+
+            copies[n] = copies[parent].clone();
+            BoardRules.merge(copies[n], masks, x, y);
+            int cleared = BoardRules.clearFullRows(copies[n]);
+            states[n].copyRows(rows);
+            if (cleared != states[n].getCleared() || !Arrays.equals(rows, copies[n])) {
+                System.out.println("MISMATCH at state " + n);
+                System.exit(1);
+            }
+        }
+
+        Set<int[]> distinct = Collections.newSetFromMap(new IdentityHashMap<int[], Boolean>());
+        for (BoardState state : states) {
+            Collections.addAll(distinct, state.chunks);
+        }
+        long shared = (long) distinct.size() * CHUNK_ROWS;
+        long full = (long) count * BoardRules.ROWS;
+        System.out.println(count + " states: " + shared + " stored rows in " + distinct.size() + " chunks, "
+                + full + " rows as full copies (" + String.format("%.1f", (double) shared / count) + " rows per state)");
+    }
+}
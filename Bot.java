@@ -0,0 +1,102 @@
+
+package tetris;
+
+/**
+ * Bot, ktry dla kadego tetromino wybiera ustawienie z najlepsz ocen {@link BoardFeatures#evaluate}.
+ * <p/>
+ * Rozwaa kady obrt wykonany w pozycji pocztkowej, potem przesunicie w lewo lub w prawo
+ * i upuszczenie, tak jak gracz uywajcy strzaek i spacji na {@link Board}.
+ * Nie jest bezpieczny dla wielu wtkw; kady wtek ma wasnego bota.
+ */
+final class Bot {
+
+    private final double[] weights;
+
+    private final int[] scratch = new int[BoardRules.ROWS];
+
+    private final int[] heights = new int[BoardRules.BLOCKS_PER_ROW];
+
+    private int bestRotation;
+
+    private int bestX;
+
+    private int bestY;
+
+    /**
+     * @param weights wagi o dugoci {@link BoardFeatures#COUNT}
+     */
+    Bot(double[] weights) {
+        if (weights.length != BoardFeatures.COUNT) {
+            throw new IllegalArgumentException("Expected " + BoardFeatures.COUNT + " weights");
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Wybiera najlepsze ustawienie tetromino.
+     *
+     * @param rows  wiersze planszy, nie s zmieniane
+     * @param shape indeks ksztatu w {@link BoardRules#SHAPES}
+     * @return Fasz, jeli kade ustawienie koczy gr.
+     */
+    boolean choose(int[] rows, int shape) {
+        double best = Double.NEGATIVE_INFINITY;
+        boolean found = false;
+        int spawnX = BoardRules.spawnX(BoardRules.SHAPES[shape]);
+
+        for (int r = 0; r < 4; r++) {
+            int[] masks = BoardRules.ROTATIONS[shape][r];
+            // Obrt odbywa si w pozycji pocztkowej; jeli si nie uda, kolejne te nie.
+            if (BoardRules.intersects(rows, masks, spawnX, 0)) {
+                break;
+            }
+            for (int direction = -1; direction <= 1; direction += 2) {
+                for (int x = direction < 0 ? spawnX : spawnX + 1; !BoardRules.intersects(rows, masks, x, 0); x += direction) {
+                    int y = BoardRules.dropY(rows, masks, x, 0);
+                    if (BoardRules.isGameOver(y)) {
+                        continue;
+                    }
+                    System.arraycopy(rows, 0, scratch, 0, rows.length);
+                    BoardRules.merge(scratch, masks, x, y);
+                    int cleared = BoardRules.clearFullRows(scratch);
+                    double score = BoardFeatures.evaluate(scratch, cleared, weights, heights);
+                    if (!found || score > best) {
+                        best = score;
+                        bestRotation = r;
+                        bestX = x;
+                        bestY = y;
+                        found = true;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Wybiera i wykonuje najlepsze ustawienie.
+     *
+     * @param rows  wiersze planszy, s zmieniane
+     * @param shape indeks ksztatu w {@link BoardRules#SHAPES}
+     * @return Liczba usunitych wierszy lub -1, jeli gra si skoczya.
+     */
+    int play(int[] rows, int shape) {
+        if (!choose(rows, shape)) {
+            return -1;
+        }
+        BoardRules.merge(rows, BoardRules.ROTATIONS[shape][bestRotation], bestX, bestY);
+        return BoardRules.clearFullRows(rows);
+    }
+
+    int getBestRotation() {
+        return bestRotation;
+    }
+
+    int getBestX() {
+        return bestX;
+    }
+
+    int getBestY() {
+        return bestY;
+    }
+}
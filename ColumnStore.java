@@ -0,0 +1,463 @@
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Kolumnowy plik liczb cakowitych: jeden plik na kolumn, wiersze dopisywane paczkami.
+ * <p/>
+ * Paczka to nagwek (liczba wierszy, kodowanie, dugo w bajtach) i zakodowane wartoci.
+ * Dla kadej kolumny i paczki wybierane jest krtsze z dwch kodowa: rnicowe (zigzag, varint)
+ * albo dugoci serii (warto i liczba powtrze, varint). Zapytanie czyta tylko pliki potrzebnych kolumn.
+ * <p/>
+ * Liczba zatwierdzonych wierszy jest trzymana w osobnym pliku {@link #ROWS_FILE} i zapisywana dopiero
+ * po zapisaniu paczki we wszystkich kolumnach. Przy otwarciu do zapisu kolumny s obcinane do tej liczby,
+ * wic przerwany zapis paczki znika. Kolumna, ktrej plik jest nowy (np. po dodaniu kolumny do schematu),
+ * dostaje zera dla wczeniejszych wierszy; pozostae kolumny nie s przez ni skracane.
+ * Nieudany zapis paczki jest cofany we wszystkich kolumnach.
+ * <p/>
+ * Magazyn otwarty przez {@link #openReadOnly(Path, String[])} niczego nie zmienia na dysku i widzi tylko
+ * zatwierdzone wiersze, wic mona go czyta, gdy gra wanie zapisuje paczk.
+ */
+final class ColumnStore implements Closeable {
+
+    static final byte DELTA = 1;
+
+    static final byte RUN_LENGTH = 2;
+
+    /**
+     * Nazwa pliku z liczb zatwierdzonych wierszy.
+     */
+    static final String ROWS_FILE = "committed.rows";
+
+    private static final int BLOCK_HEADER = 9;
+
+    private static final String SUFFIX = ".col";
+
+    /**
+     * Przyjmuje kolejne wartoci kolumny.
+     */
+    interface Visitor {
+
+        void visit(long value);
+    }
+
+    private final String[] columns;
+
+    /**
+     * Pliki kolumn; w magazynie tylko do odczytu null dla kolumny, ktrej pliku jeszcze nie ma.
+     */
+    private final FileChannel[] channels;
+
+    private final FileChannel rowsChannel;
+
+    private final boolean readOnly;
+
+    private final int batchSize;
+
+    private final long[][] pending;
+
+    private int pendingRows;
+
+    /**
+     * Liczba wierszy zapisanych we wszystkich kolumnach.
+     */
+    private long rows;
+
+    private final ByteBuffer rowCount = ByteBuffer.allocate(8);
+
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+
+    private ByteBuffer encoded = ByteBuffer.allocate(1024);
+
+    private ByteBuffer alternative = ByteBuffer.allocate(1024);
+
+    /**
+     * Otwiera (lub tworzy) magazyn do zapisu.
+     *
+     * @param directory katalog z plikami kolumn
+     * @param columns   nazwy kolumn
+     * @param batchSize ile wierszy zbiera w pamici przed zapisem paczki
+     * @throws IOException jeli plikw nie da si otworzy
+     */
+    ColumnStore(Path directory, String[] columns, int batchSize) throws IOException {
+        this(directory, columns, batchSize, false);
+    }
+
+    private ColumnStore(Path directory, String[] columns, int batchSize, boolean readOnly) throws IOException {
+        this.columns = columns.clone();
+        this.batchSize = batchSize;
+        this.readOnly = readOnly;
+        this.pending = new long[columns.length][batchSize];
+        this.channels = new FileChannel[columns.length];
+        boolean[] existed = new boolean[columns.length];
+        if (!readOnly) {
+            Files.createDirectories(directory);
+        }
+        Path rowsPath = directory.resolve(ROWS_FILE);
+        try {
+            for (int c = 0; c < columns.length; c++) {
+                Path path = directory.resolve(columns[c] + SUFFIX);
+                existed[c] = Files.exists(path);
+                if (!readOnly) {
+                    channels[c] = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } else if (existed[c]) {
+                    channels[c] = FileChannel.open(path, StandardOpenOption.READ);
+                }
+            }
+            if (!readOnly) {
+                rowsChannel = FileChannel.open(rowsPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } else {
+                rowsChannel = Files.exists(rowsPath) ? FileChannel.open(rowsPath, StandardOpenOption.READ) : null;
+            }
+            rows = readRows(existed);
+            if (!readOnly) {
+                repair();
+            }
+        } catch (IOException e) {
+            try {
+                closeChannels();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Otwiera istniejcy magazyn tylko do odczytu, np. dla zapyta w czasie gry.
+     * Kolumna bez pliku ma same zera.
+     *
+     * @param directory katalog z plikami kolumn
+     * @param columns   nazwy kolumn
+     * @throws IOException jeli plikw nie da si odczyta
+     */
+    static ColumnStore openReadOnly(Path directory, String[] columns) throws IOException {
+        return new ColumnStore(directory, columns, 0, true);
+    }
+
+    /**
+     * Czyta liczb zatwierdzonych wierszy. Magazyn bez pliku {@link #ROWS_FILE} (zapisany przed jego
+     * wprowadzeniem) ma tyle wierszy, ile penych paczek ma najkrtsza z istniejcych wczeniej kolumn.
+     */
+    private long readRows(boolean[] existed) throws IOException {
+        if (rowsChannel != null && rowsChannel.size() >= rowCount.capacity()) {
+            rowCount.clear();
+            while (rowCount.hasRemaining() && rowsChannel.read(rowCount, rowCount.position()) > 0) {
+                // Czytaj do koca liczby.
+            }
+            return rowCount.getLong(0);
+        }
+        long min = Long.MAX_VALUE;
+        long[] counted = new long[1];
+        for (int c = 0; c < columns.length; c++) {
+            if (existed[c]) {
+                blocksEnd(channels[c], Long.MAX_VALUE, counted);
+                min = Math.min(min, counted[0]);
+            }
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * Obcina kad kolumn do zatwierdzonych wierszy i uzupenia zerami kolumny krtsze od nich.
+     */
+    private void repair() throws IOException {
+        long[] counted = new long[1];
+        for (FileChannel channel : channels) {
+            long end = blocksEnd(channel, rows, counted);
+            channel.truncate(end);
+            channel.position(end);
+            for (long missing = rows - counted[0]; missing > 0; ) {
+                int count = (int) Math.min(missing, Integer.MAX_VALUE);
+                alternative.clear();
+                alternative = putVarLong(alternative, zigzag(0));
+                alternative = putVarLong(alternative, count);
+                writeBlock(channel, count, RUN_LENGTH, alternative);
+                missing -= count;
+            }
+            channel.force(false);
+        }
+        writeRows(rows);
+    }
+
+    /**
+     * Przechodzi przez pene paczki kolumny, dopki razem maj najwyej {@code limit} wierszy.
+     *
+     * @param counted {@code counted[0]} dostaje liczb wierszy w tych paczkach
+     * @return Pozycja za ostatni z tych paczek.
+     */
+    private long blocksEnd(FileChannel channel, long limit, long[] counted) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        counted[0] = 0;
+        while (position + BLOCK_HEADER <= size) {
+            header.clear();
+            channel.read(header, position);
+            int blockRows = header.getInt(0);
+            long next = position + BLOCK_HEADER + header.getInt(5);
+            if (next > size || counted[0] + blockRows > limit) {
+                break;
+            }
+            position = next;
+            counted[0] += blockRows;
+        }
+        return position;
+    }
+
+    private void writeRows(long value) throws IOException {
+        rowCount.clear();
+        rowCount.putLong(value).flip();
+        while (rowCount.hasRemaining()) {
+            rowsChannel.write(rowCount, rowCount.position());
+        }
+        rowsChannel.force(false);
+    }
+
+    /**
+     * Dopisuje wiersz. Zapis na dysk nastpuje co {@code batchSize} wierszy lub w {@link #flush()}.
+     * Jeli poprzedni zapis paczki si nie powid, najpierw ponawia go, wic w pamici nigdy nie ma
+     * wicej ni {@code batchSize} wierszy.
+     *
+     * @param row wartoci w kolejnoci kolumn
+     * @throws IOException jeli zapis paczki si nie powid
+     */
+    void append(long[] row) throws IOException {
+        if (readOnly) {
+            throw new IllegalStateException("Store is read-only");
+        }
+        if (row.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " values, got " + row.length);
+        }
+        if (pendingRows == batchSize) {
+            flush();
+        }
+        for (int c = 0; c < columns.length; c++) {
+            pending[c][pendingRows] = row[c];
+        }
+        if (++pendingRows == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Zapisuje zebrane wiersze jako paczk w kadej kolumnie. Jeli zapis si nie powid, wszystkie kolumny
+     * s obcinane do stanu sprzed paczki, a wiersze zostaj w pamici do nastpnej prby.
+     *
+     * @throws IOException jeli zapis si nie powid
+     */
+    void flush() throws IOException {
+        if (pendingRows == 0) {
+            return;
+        }
+        long[] starts = new long[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            starts[c] = channels[c].position();
+        }
+        try {
+            for (int c = 0; c < columns.length; c++) {
+                encoded = encodeDelta(pending[c], pendingRows, encoded);
+                alternative = encodeRunLength(pending[c], pendingRows, alternative);
+                ByteBuffer best = alternative.position() < encoded.position() ? alternative : encoded;
+                writeBlock(channels[c], pendingRows, best == alternative ? RUN_LENGTH : DELTA, best);
+            }
+            for (FileChannel channel : channels) {
+                channel.force(false);
+            }
+            writeRows(rows + pendingRows);
+        } catch (IOException e) {
+            for (int c = 0; c < columns.length; c++) {
+                try {
+                    channels[c].truncate(starts[c]);
+                    channels[c].position(starts[c]);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        rows += pendingRows;
+        pendingRows = 0;
+    }
+
+    /**
+     * @param data zakodowane wartoci, od pocztku bufora do jego pozycji
+     */
+    private void writeBlock(FileChannel channel, int count, byte encoding, ByteBuffer data) throws IOException {
+        header.clear();
+        header.putInt(count).put(encoding).putInt(data.position()).flip();
+        data.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private static ByteBuffer encodeDelta(long[] values, int count, ByteBuffer out) {
+        out.clear();
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            out = putVarLong(out, zigzag(values[i] - previous));
+            previous = values[i];
+        }
+        return out;
+    }
+
+    private static ByteBuffer encodeRunLength(long[] values, int count, ByteBuffer out) {
+        out.clear();
+        int i = 0;
+        while (i < count) {
+            int run = 1;
+            while (i + run < count && values[i + run] == values[i]) {
+                run++;
+            }
+            out = putVarLong(out, zigzag(values[i]));
+            out = putVarLong(out, run);
+            i += run;
+        }
+        return out;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static ByteBuffer putVarLong(ByteBuffer out, long value) {
+        if (out.remaining() < 10) {
+            ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2);
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+        return out;
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Czyta wszystkie zatwierdzone wartoci jednej kolumny. Wiersze jeszcze niezapisane nie s widoczne.
+     *
+     * @param column  nazwa kolumny
+     * @param visitor odbiorca wartoci
+     * @throws IOException jeli odczyt si nie powid
+     */
+    void scan(String column, Visitor visitor) throws IOException {
+        FileChannel channel = channels[indexOf(column)];
+        if (channel == null) {
+            for (long r = 0; r < rows; r++) {
+                visitor.visit(0);
+            }
+            return;
+        }
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER);
+        ByteBuffer block = ByteBuffer.allocate(1024);
+        long position = 0;
+        long visited = 0;
+        while (visited < rows) {
+            blockHeader.clear();
+            while (blockHeader.hasRemaining()) {
+                if (channel.read(blockHeader, position + blockHeader.position()) < 0) {
+                    throw new IOException("Truncated block in " + column);
+                }
+            }
+            int blockRows = blockHeader.getInt(0);
+            byte encoding = blockHeader.get(4);
+            int length = blockHeader.getInt(5);
+            if (block.capacity() < length) {
+                block = ByteBuffer.allocate(Math.max(length, block.capacity() * 2));
+            }
+            block.clear();
+            block.limit(length);
+            while (block.hasRemaining()) {
+                if (channel.read(block, position + BLOCK_HEADER + block.position()) < 0) {
+                    throw new IOException("Truncated block in " + column);
+                }
+            }
+            block.flip();
+            if (encoding == DELTA) {
+                long value = 0;
+                for (int i = 0; i < blockRows; i++) {
+                    value += unzigzag(getVarLong(block));
+                    visitor.visit(value);
+                }
+            } else if (encoding == RUN_LENGTH) {
+                int read = 0;
+                while (read < blockRows) {
+                    long value = unzigzag(getVarLong(block));
+                    long run = getVarLong(block);
+                    for (long r = 0; r < run; r++) {
+                        visitor.visit(value);
+                    }
+                    read += run;
+                }
+            } else {
+                throw new IOException("Unknown encoding " + encoding + " in " + column);
+            }
+            visited += blockRows;
+            position += BLOCK_HEADER + length;
+        }
+    }
+
+    private int indexOf(String column) {
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c].equals(column)) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + column);
+    }
+
+    /**
+     * @return Liczba zatwierdzonych wierszy.
+     */
+    long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        for (FileChannel channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        if (rowsChannel != null) {
+            rowsChannel.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+
+package tetris;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * rodowisko do uczenia ze wzmocnieniem: K niezalenych gier bez JavaFX, krokowanych razem.
+ * <p/>
+ * Akcja to ustawienie biecego tetromino: obrt i pozycja X, zakodowane jako {@code obrt * COLUMNS + x + X_OFFSET}.
+ * Tetromino jest obracane w pozycji pocztkowej, przesuwane w wierszu 0 i upuszczane, tak jak na {@link Board}.
+ * Niedozwolona akcja upuszcza tetromino bez obrotu i przesunicia.
+ * <p/>
+ * Obserwacje s zapisywane do bufora podanego przy tworzeniu, {@link #OBSERVATION_SIZE} liczb na gr:
+ * wiersze planszy jako maski bitowe, biecy ksztat, nastpny ksztat, liczba wierszy usunitych w tym kroku,
+ * przyrost wyniku w tym kroku (punkty jak w {@link ScoreManager}, {@link #POINTS}) i znacznik koca gry.
+ * Gra, ktra si skoczya, od razu zaczyna si od nowa.
+ * Krok nie alokuje pamici.
+ * <p/>
+ * Wtki robocze czekaj na krok aktywnie tylko przez {@link #SPIN_NANOS}, potem usypiaj,
+ * wic midzy krokami (np. w czasie liczenia polityki) nie zajmuj procesorw.
+ */
+final class Env implements Closeable {
+
+    /**
+     * Przesunicie pozycji X w akcji; tetromino moe wystawa pustymi kolumnami poza lew krawd.
+     */
+    static final int X_OFFSET = 2;
+
+    static final int COLUMNS = BoardRules.BLOCKS_PER_ROW + X_OFFSET;
+
+    /**
+     * Liczba moliwych akcji.
+     */
+    static final int ACTIONS = 4 * COLUMNS;
+
+    static final int OBS_CURRENT = BoardRules.ROWS;
+
+    static final int OBS_NEXT = OBS_CURRENT + 1;
+
+    static final int OBS_ROWS_ELIMINATED = OBS_NEXT + 1;
+
+    static final int OBS_SCORE_DELTA = OBS_ROWS_ELIMINATED + 1;
+
+    static final int OBS_DONE = OBS_SCORE_DELTA + 1;
+
+    static final int OBSERVATION_SIZE = OBS_DONE + 1;
+
+    /**
+     * Punkty za 0, 1, 2, 3 i 4 wiersze usunite jednym tetromino, tak jak w {@link ScoreManager}.
+     */
+    static final int[] POINTS = {0, 50, 100, 350, 1000};
+
+    /**
+     * Jak dugo wtek czeka aktywnie, zanim unie: kroki nastpujce po sobie zastaj go jeszcze aktywnego.
+     */
+    static final long SPIN_NANOS = 50000;
+
+    private final int size;
+
+    private final IntBuffer observations;
+
+    private final int[][] boards;
+
+    private final int[] current;
+
+    private final int[] next;
+
+    private final long[] random;
+
+    private final Worker[] workers;
+
+    private final Thread[] threads;
+
+    /**
+     * Wtek czekajcy w {@link #step(IntBuffer)}, budzony przez ostatni wtek roboczy.
+     */
+    private volatile Thread stepping;
+
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private volatile IntBuffer actions;
+
+    private volatile int epoch;
+
+    private volatile boolean closed;
+
+    /**
+     * @param size         liczba gier
+     * @param observations bufor bezporedni na {@code size * OBSERVATION_SIZE * 4} bajtw, kolejno bajtw natywna
+     * @param threads      liczba wtkw; 1 oznacza krokowanie w wtku wywoujcym
+     */
+    Env(int size, ByteBuffer observations, int threads) {
+        this(size, observations.order(ByteOrder.nativeOrder()).asIntBuffer(), threads);
+    }
+
+    /**
+     * @param size         liczba gier
+     * @param observations bufor na {@code size * OBSERVATION_SIZE} liczb
+     * @param threads      liczba wtkw; 1 oznacza krokowanie w wtku wywoujcym
+     */
+    Env(int size, IntBuffer observations, int threads) {
+        if (observations.capacity() < size * OBSERVATION_SIZE) {
+            throw new IllegalArgumentException("Observation buffer too small: " + observations.capacity() + " < " + size * OBSERVATION_SIZE);
+        }
+        this.size = size;
+        this.observations = observations;
+        this.boards = new int[size][BoardRules.ROWS];
+        this.current = new int[size];
+        this.next = new int[size];
+        this.random = new long[size];
+
+        threads = Math.max(1, Math.min(threads, size));
+        workers = new Worker[threads > 1 ? threads : 0];
+        this.threads = new Thread[workers.length];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Worker(size * t / threads, size * (t + 1) / threads, epoch);
+            this.threads[t] = new Thread(workers[t], "env-" + t);
+            this.threads[t].setDaemon(true);
+        }
+        for (Thread thread : this.threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Zaczyna wszystkie gry od nowa.
+     *
+     * @param seed ziarno; gra i dostaje wasny cig tetrominos wyprowadzony z ziarna
+     */
+    void reset(long seed) {
+        for (int i = 0; i < size; i++) {
+            random[i] = mix(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+            resetGame(i);
+            observe(i, 0, false);
+        }
+    }
+
+    /**
+     * Wykonuje jedn akcj w kadej grze.
+     *
+     * @param actions akcje, jedna na gr, od indeksu 0
+     * @throws IllegalStateException jeli rodowisko zamknito
+     */
+    void step(IntBuffer actions) {
+        if (closed) {
+            throw new IllegalStateException("Env is closed");
+        }
+        if (workers.length == 0) {
+            step(actions, 0, size);
+            return;
+        }
+        this.actions = actions;
+        stepping = Thread.currentThread();
+        finished.set(0);
+        epoch++;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        long spinStart = System.nanoTime();
+        while (finished.get() < workers.length) {
+            if (closed) {
+                throw new IllegalStateException("Env was closed during step");
+            }
+            if (System.nanoTime() - spinStart < SPIN_NANOS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void step(IntBuffer actions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int[] rows = boards[i];
+            int shape = current[i];
+            int action = actions.get(i);
+            int rotation = action / COLUMNS;
+            int x = action % COLUMNS - X_OFFSET;
+            if (action < 0 || action >= ACTIONS || !reachable(rows, shape, rotation, x)) {
+                rotation = 0;
+                x = BoardRules.spawnX(BoardRules.SHAPES[shape]);
+            }
+
+            int[] masks = BoardRules.ROTATIONS[shape][rotation];
+            int y = BoardRules.dropY(rows, masks, x, 0);
+            if (BoardRules.isGameOver(y)) {
+                resetGame(i);
+                observe(i, 0, true);
+            } else {
+                BoardRules.merge(rows, masks, x, y);
+                int cleared = BoardRules.clearFullRows(rows);
+                current[i] = next[i];
+                next[i] = nextShape(i);
+                observe(i, cleared, false);
+            }
+        }
+    }
+
+    /**
+     * Sprawdza, czy ustawienie da si osign: obroty w lewo lub w prawo w pozycji pocztkowej, potem przesunicia w wierszu 0.
+     */
+    private static boolean reachable(int[] rows, int shape, int rotation, int x) {
+        int spawnX = BoardRules.spawnX(BoardRules.SHAPES[shape]);
+        int[][] rotations = BoardRules.ROTATIONS[shape];
+        if (BoardRules.intersects(rows, rotations[rotation], spawnX, 0)) {
+            return false;
+        }
+        // Do obrotu 2 prowadzi obrt 1 albo 3, do obrotw 1 i 3 wystarczy jeden obrt.
+        if (rotation == 2 && BoardRules.intersects(rows, rotations[1], spawnX, 0) && BoardRules.intersects(rows, rotations[3], spawnX, 0)) {
+            return false;
+        }
+        int[] masks = BoardRules.ROTATIONS[shape][rotation];
+        int step = x < spawnX ? -1 : 1;
+        for (int c = spawnX; c != x; c += step) {
+            if (BoardRules.intersects(rows, masks, c + step, 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resetGame(int i) {
+        int[] rows = boards[i];
+        for (int r = 0; r < rows.length; r++) {
+            rows[r] = 0;
+        }
+        current[i] = nextShape(i);
+        next[i] = nextShape(i);
+    }
+
+    private void observe(int i, int rowsEliminated, boolean done) {
+        int base = i * OBSERVATION_SIZE;
+        int[] rows = boards[i];
+        for (int r = 0; r < BoardRules.ROWS; r++) {
+            observations.put(base + r, rows[r]);
+        }
+        observations.put(base + OBS_CURRENT, current[i]);
+        observations.put(base + OBS_NEXT, next[i]);
+        observations.put(base + OBS_ROWS_ELIMINATED, rowsEliminated);
+        observations.put(base + OBS_SCORE_DELTA, POINTS[Math.min(rowsEliminated, POINTS.length - 1)]);
+        observations.put(base + OBS_DONE, done ? 1 : 0);
+    }
+
+    /**
+     * Losuje ksztat generatorem xorshift64* danej gry.
+     */
+    private int nextShape(int i) {
+        long s = random[i];
+        s ^= s >>> 12;
+        s ^= s << 25;
+        s ^= s >>> 27;
+        random[i] = s;
+        return (int) (((s * 0x2545F4914F6CDD1DL) >>> 33) % BoardRules.SHAPES.length);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return z == 0 ? 1 : z;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Zatrzymuje wtki robocze.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+        LockSupport.unpark(stepping);
+    }
+
+    /**
+     * Wtek krokujcy stay zakres gier. Czeka aktywnie przez {@link #SPIN_NANOS}, bo kroki zwykle
+     * nastpuj szybko po sobie, a potem usypia do nastpnego {@link #step(IntBuffer)}.
+     */
+    private final class Worker implements Runnable {
+
+        private final int from;
+
+        private final int to;
+
+        /**
+         * Epoka z chwili utworzenia; wtek moe wystartowa dopiero po pierwszym {@link #step(IntBuffer)}.
+         */
+        private final int start;
+
+        Worker(int from, int to, int start) {
+            this.from = from;
+            this.to = to;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            int seen = start;
+            long spinStart = System.nanoTime();
+            while (!closed) {
+                int e = epoch;
+                if (e == seen) {
+                    if (System.nanoTime() - spinStart < SPIN_NANOS) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.park(this);
+                    }
+                    continue;
+                }
+                seen = e;
+                step(actions, from, to);
+                if (finished.incrementAndGet() == workers.length) {
+                    LockSupport.unpark(stepping);
+                }
+                spinStart = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Mierzy liczb krokw na sekund z losowymi akcjami.
+     * <p/>
+     * Uycie: {@code Env [gry] [wtki] [kroki]}
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        ByteBuffer observations = ByteBuffer.allocateDirect(size * OBSERVATION_SIZE * 4);
+        IntBuffer actions = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        try (Env env = new Env(size, observations, threads)) {
+            env.reset(1);
+            long s = 1;
+            long start = System.nanoTime();
+            for (int t = 0; t < steps; t++) {
+                for (int i = 0; i < size; i++) {
+                    s = s * 6364136223846793005L + 1442695040888963407L;
+                    actions.put(i, (int) ((s >>> 33) % ACTIONS));
+                }
+                env.step(actions);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%.0f", (double) size * steps / seconds) + " steps/s");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+
+package tetris;
+
+import javafx.collections.ListChangeListener;
+import javafx.geometry.HorizontalDirection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Zbiera statystyki gry i po jej zakoczeniu dopisuje jeden wiersz do {@link ColumnStore}.
+ * <p/>
+ * Wysoko i dziury s mierzone po kadym upuszczeniu tetromino. Wiersze zapisywane s paczkami,
+ * wic ostatnie gry trafiaj na dysk dopiero w {@link #close()}.
+ * <p/>
+ * Uycie zapytania: {@code GameAnalytics <katalog> <kolumna>...} wypisuje liczb gier, sum i redni
+ * kadej podanej kolumny, czytajc tylko jej plik. Zapytanie otwiera magazyn tylko do odczytu,
+ * wic mona je uruchomi w czasie gry.
+ */
+final class GameAnalytics implements Board.BoardListener, Closeable {
+
+    static final String[] COLUMNS = {
+            "endedAt", "durationMs", "pieces", "lines1", "lines2", "lines3", "lines4",
+            "maxHeight", "maxHoles", "avgHoles100", "moves", "rotations", "invalidMoves"
+    };
+
+    /**
+     * Domylna liczba gier w paczce.
+     */
+    static final int BATCH_SIZE = 64;
+
+    private final Board board;
+
+    private final ColumnStore store;
+
+    private final long[] row = new long[COLUMNS.length];
+
+    private final int[] heights = new int[BoardRules.BLOCKS_PER_ROW];
+
+    private final long[] lines = new long[4];
+
+    private long startedAt = System.currentTimeMillis();
+
+    private long pieces;
+
+    private long maxHeight;
+
+    private long maxHoles;
+
+    private long holesSum;
+
+    private long samples;
+
+    private long moves;
+
+    private long rotations;
+
+    private long invalidMoves;
+
+    /**
+     * @param board     plansza, ktrej gry s zapisywane
+     * @param directory katalog z plikami kolumn
+     * @throws IOException jeli plikw nie da si otworzy
+     */
+    GameAnalytics(Board board, Path directory) throws IOException {
+        this.board = board;
+        this.store = new ColumnStore(directory, COLUMNS, BATCH_SIZE);
+        board.addBoardListener(this);
+        board.getWaitingTetrominos().addListener(new ListChangeListener<Tetromino>() {
+            @Override
+            public void onChanged(Change<? extends Tetromino> change) {
+                while (change.next()) {
+                    // Odrodzenie wyjmuje jedno tetromino, a w kolejce zostaje podgld;
+                    // koniec gry czyci ca kolejk i nie jest odrodzeniem.
+                    if (change.wasRemoved() && !change.getList().isEmpty()) {
+                        if (pieces == 0 && samples == 0) {
+                            startedAt = System.currentTimeMillis();
+                        }
+                        pieces += change.getRemovedSize();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onDropped() {
+        int[] rows = board.getOccupancy();
+        BoardFeatures.heights(rows, heights);
+        int height = 0;
+        for (int h : heights) {
+            height = Math.max(height, h);
+        }
+        int holes = BoardFeatures.holes(rows);
+        maxHeight = Math.max(maxHeight, height);
+        maxHoles = Math.max(maxHoles, holes);
+        holesSum += holes;
+        samples++;
+    }
+
+    @Override
+    public void onRowsEliminated(int rows) {
+        lines[Math.min(rows, 4) - 1]++;
+    }
+
+    @Override
+    public void onGameOver() {
+        long now = System.currentTimeMillis();
+        row[0] = now;
+        row[1] = now - startedAt;
+        row[2] = pieces;
+        row[3] = lines[0];
+        row[4] = lines[1];
+        row[5] = lines[2];
+        row[6] = lines[3];
+        row[7] = maxHeight;
+        row[8] = maxHoles;
+        row[9] = samples == 0 ? 0 : holesSum * 100 / samples;
+        row[10] = moves;
+        row[11] = rotations;
+        row[12] = invalidMoves;
+        try {
+            store.append(row);
+        } catch (IOException e) {
+            // Statystyki nie mog przerwa gry.
+            e.printStackTrace();
+        }
+        reset();
+    }
+
+    private void reset() {
+        startedAt = System.currentTimeMillis();
+        pieces = 0;
+        maxHeight = 0;
+        maxHoles = 0;
+        holesSum = 0;
+        samples = 0;
+        moves = 0;
+        rotations = 0;
+        invalidMoves = 0;
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = 0;
+        }
+    }
+
+    @Override
+    public void onInvalidMove() {
+        invalidMoves++;
+    }
+
+    @Override
+    public void onMove(HorizontalDirection horizontalDirection) {
+        moves++;
+    }
+
+    @Override
+    public void onRotate(HorizontalDirection horizontalDirection) {
+        rotations++;
+    }
+
+    /**
+     * Zapisuje zebrane gry i zamyka pliki.
+     */
+    @Override
+    public void close() throws IOException {
+        board.removeBoardListener(this);
+        store.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: GameAnalytics <directory> <column>...");
+            System.exit(2);
+        }
+        try (ColumnStore store = ColumnStore.openReadOnly(Paths.get(args[0]), COLUMNS)) {
+            for (int i = 1; i < args.length; i++) {
+                final long[] result = new long[2];
+                store.scan(args[i], new ColumnStore.Visitor() {
+                    @Override
+                    public void visit(long value) {
+                        result[0]++;
+                        result[1] += value;
+                    }
+                });
+                System.out.println(args[i] + ": games " + result[0] + ", sum " + result[1] + ", avg " + (result[0] == 0 ? 0 : (double) result[1] / result[0]));
+            }
+        }
+    }
+}
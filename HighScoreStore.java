@@ -0,0 +1,494 @@
+
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Trway magazyn najlepszych wynikw.
+ * <p/>
+ * Wyniki s dopisywane do dziennika (tylko dopisywanie) o staej dugoci rekordu,
+ * a nazwy graczy do osobnego, maego pliku. Przy otwarciu dziennik jest czytany
+ * sekwencyjnie, bez tworzenia obiektu na rekord, i budowane s kopce top-K:
+ * wszech czasw, dzienne i dla kadego gracza. Zapytania czytaj tylko kopce.
+ * <p/>
+ * Rekordy z bdn sum kontroln s pomijane, a skanowanie idzie dalej od nastpnego rekordu,
+ * bo rekordy le zawsze na granicach co {@link #RECORD_SIZE} bajtw. Uszkodzony lub niedokoczony ogon
+ * dziennika (np. po awarii zasilania) jest obcinany. Nieudany zapis jest cofany do granicy ostatniego rekordu.
+ * <p/>
+ * Magazyn trzyma wyczn blokad pliku wynikw, wic drugi proces nie otworzy tego samego katalogu
+ * i nie przeplecie rekordw ani identyfikatorw graczy.
+ */
+final class HighScoreStore implements Closeable {
+
+    /**
+     * Nazwa pliku z wynikami.
+     */
+    static final String SCORES_FILE = "scores.log";
+
+    /**
+     * Nazwa pliku z nazwami graczy, jedna nazwa na wiersz. Numer wiersza jest identyfikatorem gracza.
+     */
+    static final String PLAYERS_FILE = "players.log";
+
+    /**
+     * Nagwek pliku z wynikami: "TSCR".
+     */
+    private static final int MAGIC = 0x54534352;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Rekord: wynik, dzie (od epoki, UTC), identyfikator gracza, suma kontrolna CRC32 pierwszych 12 bajtw.
+     */
+    private static final int RECORD_SIZE = 16;
+
+    /**
+     * Ile rekordw czytamy za jednym razem podczas skanowania.
+     */
+    private static final int SCAN_BATCH = 4096;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int k;
+
+    private final FileChannel scores;
+
+    private final FileChannel players;
+
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    private final List<String> playerNames = new ArrayList<>();
+
+    private final Map<String, Integer> playerIds = new HashMap<>();
+
+    private final TopK allTime;
+
+    private final Map<Integer, TopK> daily = new HashMap<>();
+
+    private final List<TopK> perPlayer = new ArrayList<>();
+
+    private long count;
+
+    /**
+     * Otwiera (lub tworzy) magazyn w podanym katalogu.
+     *
+     * @param directory katalog magazynu
+     * @param k         ile najlepszych wynikw pamita w kadym indeksie; zapytania mog prosi o co najwyej tyle
+     * @throws IOException jeli plikw nie da si odczyta lub zapisa albo magazyn jest otwarty przez inny proces
+     */
+    HighScoreStore(Path directory, int k) throws IOException {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.allTime = new TopK(k);
+        Files.createDirectories(directory);
+        players = FileChannel.open(directory.resolve(PLAYERS_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scores = FileChannel.open(directory.resolve(SCORES_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = scores.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("Score store is in use: " + directory);
+            }
+            loadPlayers();
+            loadScores();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Czyta nazwy graczy. Niedokoczony ostatni wiersz jest obcinany.
+     */
+    private void loadPlayers() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) players.size());
+        while (buffer.hasRemaining() && players.read(buffer, buffer.position()) > 0) {
+            // Czytaj do koca pliku.
+        }
+        byte[] bytes = buffer.array();
+        int start = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == '\n') {
+                addPlayer(new String(bytes, start, i - start, UTF_8));
+                start = i + 1;
+            }
+        }
+        players.truncate(start);
+        players.position(start);
+    }
+
+    /**
+     * Skanuje dziennik wynikw i buduje indeksy. Rekordy z bdn sum kontroln lub nieznanym graczem
+     * s pomijane; plik jest obcinany za ostatnim poprawnym rekordem.
+     */
+    private void loadScores() throws IOException {
+        if (scores.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            scores.truncate(0);
+            scores.write(header, 0);
+            scores.force(false);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            scores.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a score log or unsupported version");
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * SCAN_BATCH);
+        byte[] bytes = buffer.array();
+        long position = HEADER_SIZE;
+        long end = HEADER_SIZE;
+
+        while (true) {
+            buffer.clear();
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = scores.read(buffer, position + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            int records = read / RECORD_SIZE;
+            for (int r = 0; r < records; r++) {
+                int offset = r * RECORD_SIZE;
+                crc.reset();
+                crc.update(bytes, offset, RECORD_SIZE - 4);
+                int score = buffer.getInt(offset);
+                int day = buffer.getInt(offset + 4);
+                int player = buffer.getInt(offset + 8);
+                position += RECORD_SIZE;
+                if ((int) crc.getValue() != buffer.getInt(offset + 12) || player < 0 || player >= playerNames.size()) {
+                    // Rekord uszkodzony, np. czciowo nadpisany; nastpny zaczyna si na kolejnej granicy.
+                    continue;
+                }
+                index(score, day, player);
+                end = position;
+            }
+            if (records < SCAN_BATCH) {
+                break;
+            }
+        }
+        scores.truncate(end);
+        scores.position(end);
+    }
+
+    private int addPlayer(String name) {
+        int id = playerNames.size();
+        playerNames.add(name);
+        playerIds.put(name, id);
+        perPlayer.add(new TopK(k));
+        return id;
+    }
+
+    private void index(int score, int day, int player) {
+        allTime.offer(score, day, player);
+        TopK topOfDay = daily.get(day);
+        if (topOfDay == null) {
+            topOfDay = new TopK(k);
+            daily.put(day, topOfDay);
+        }
+        topOfDay.offer(score, day, player);
+        perPlayer.get(player).offer(score, day, player);
+        count++;
+    }
+
+    /**
+     * Zapisuje wynik z dzisiejsz dat.
+     *
+     * @param player nazwa gracza
+     * @param score  wynik
+     * @throws IOException jeli zapis si nie powid
+     */
+    void record(String player, int score) throws IOException {
+        record(player, score, today());
+    }
+
+    /**
+     * Zapisuje wynik.
+     *
+     * @param player nazwa gracza, bez znaku nowej linii
+     * @param score  wynik
+     * @param day    dzie od epoki (UTC)
+     * @throws IOException jeli zapis si nie powid
+     */
+    synchronized void record(String player, int score, int day) throws IOException {
+        if (player.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Player name must not contain a line break");
+        }
+        Integer id = playerIds.get(player);
+        if (id == null) {
+            // Nazwa musi trafi na dysk przed pierwszym rekordem, ktry si do niej odwouje.
+            ByteBuffer line = ByteBuffer.wrap((player + '\n').getBytes(UTF_8));
+            long start = players.position();
+            try {
+                while (line.hasRemaining()) {
+                    players.write(line);
+                }
+                players.force(false);
+            } catch (IOException e) {
+                rollBack(players, start, e);
+                throw e;
+            }
+            id = addPlayer(player);
+        }
+
+        record.clear();
+        record.putInt(score).putInt(day).putInt(id);
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        long start = scores.position();
+        try {
+            while (record.hasRemaining()) {
+                scores.write(record);
+            }
+        } catch (IOException e) {
+            // Bez tego nastpne rekordy nie leayby na granicach co RECORD_SIZE bajtw.
+            rollBack(scores, start, e);
+            throw e;
+        }
+        index(score, day, id);
+    }
+
+    /**
+     * Obcina plik do granicy sprzed nieudanego zapisu. Bd obcinania jest doczany do bdu zapisu.
+     */
+    private static void rollBack(FileChannel channel, long position, IOException cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Wymusza zapis dziennika na dysk. Wywoywane np. na koniec gry lub co kilka wynikw.
+     *
+     * @throws IOException jeli zapis si nie powid
+     */
+    synchronized void sync() throws IOException {
+        scores.force(false);
+    }
+
+    /**
+     * @param n liczba wynikw, co najwyej k
+     * @return Najlepsze wyniki wszech czasw, od najlepszego.
+     */
+    synchronized List<Entry> topAllTime(int n) {
+        return allTime.top(n, playerNames);
+    }
+
+    /**
+     * @param day dzie od epoki (UTC)
+     * @param n   liczba wynikw, co najwyej k
+     * @return Najlepsze wyniki danego dnia, od najlepszego.
+     */
+    synchronized List<Entry> topOfDay(int day, int n) {
+        TopK topOfDay = daily.get(day);
+        return topOfDay == null ? new ArrayList<Entry>() : topOfDay.top(n, playerNames);
+    }
+
+    /**
+     * @param player nazwa gracza
+     * @param n      liczba wynikw, co najwyej k
+     * @return Najlepsze wyniki gracza, od najlepszego.
+     */
+    synchronized List<Entry> topOfPlayer(String player, int n) {
+        Integer id = playerIds.get(player);
+        return id == null ? new ArrayList<Entry>() : perPlayer.get(id).top(n, playerNames);
+    }
+
+    /**
+     * @return Liczba wszystkich zapisanych wynikw.
+     */
+    synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return Dzisiejszy dzie od epoki (UTC).
+     */
+    static int today() {
+        return (int) (System.currentTimeMillis() / MILLIS_PER_DAY);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (scores.isOpen()) {
+                scores.force(false);
+            }
+        } finally {
+            scores.close();
+            players.close();
+        }
+    }
+
+    /**
+     * Pojedynczy wynik zwracany przez zapytania.
+     */
+    static final class Entry {
+
+        private final String player;
+
+        private final int score;
+
+        private final int day;
+
+        Entry(String player, int score, int day) {
+            this.player = player;
+            this.score = score;
+            this.day = day;
+        }
+
+        String getPlayer() {
+            return player;
+        }
+
+        int getScore() {
+            return score;
+        }
+
+        /**
+         * @return Dzie od epoki (UTC).
+         */
+        int getDay() {
+            return day;
+        }
+
+        @Override
+        public String toString() {
+            return player + ": " + score;
+        }
+    }
+
+    /**
+     * Kopiec minimalny k najlepszych wynikw, trzymany w tablicach prymityww.
+     * Przy remisie zostaje wczeniejszy wynik.
+     */
+    private static final class TopK {
+
+        private final int capacity;
+
+        private int[] scores = new int[4];
+
+        private int[] days = new int[4];
+
+        private int[] players = new int[4];
+
+        private int size;
+
+        TopK(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(int score, int day, int player) {
+            if (size < capacity) {
+                if (size == scores.length) {
+                    int length = Math.min(capacity, size * 2);
+                    scores = Arrays.copyOf(scores, length);
+                    days = Arrays.copyOf(days, length);
+                    players = Arrays.copyOf(players, length);
+                }
+                int i = size++;
+                // Przesiewanie w gr.
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (scores[parent] <= score) {
+                        break;
+                    }
+                    set(i, parent);
+                    i = parent;
+                }
+                scores[i] = score;
+                days[i] = day;
+                players[i] = player;
+            } else if (score > scores[0]) {
+                int i = 0;
+                // Przesiewanie w d.
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && scores[child + 1] < scores[child]) {
+                        child++;
+                    }
+                    if (scores[child] >= score) {
+                        break;
+                    }
+                    set(i, child);
+                    i = child;
+                }
+                scores[i] = score;
+                days[i] = day;
+                players[i] = player;
+            }
+        }
+
+        private void set(int to, int from) {
+            scores[to] = scores[from];
+            days[to] = days[from];
+            players[to] = players[from];
+        }
+
+        List<Entry> top(int n, List<String> names) {
+            if (n < 0 || n > capacity) {
+                throw new IllegalArgumentException("n must be between 0 and " + capacity + ": " + n);
+            }
+            // Sortowanie przez wybr po kopii indeksw; k jest mae.
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            int limit = Math.min(n, size);
+            List<Entry> result = new ArrayList<>(limit);
+            for (int i = 0; i < limit; i++) {
+                int best = i;
+                for (int j = i + 1; j < size; j++) {
+                    if (scores[order[j]] > scores[order[best]]) {
+                        best = j;
+                    }
+                }
+                int tmp = order[i];
+                order[i] = order[best];
+                order[best] = tmp;
+                int e = order[i];
+                result.add(new Entry(names.get(players[e]), scores[e], days[e]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+
+package tetris;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.EventHandler;
+import javafx.scene.input.InputEvent;
+import javafx.stage.Stage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Usypia plansz, gdy okno jest zminimalizowane, traci fokus lub nikt go nie uywa przez duszy czas,
+ * i budzi j przy pierwszym zdarzeniu wejcia.
+ * <p/>
+ * Brak aktywnoci sprawdza osobny wtek, a nie animacja JavaFX, bo dziaajca animacja
+ * sama w sobie utrzymywaaby rysowanie klatek.
+ * <p/>
+ * Usypiana jest tylko plansza. Podgld i nakadka z powiadomieniami nie maj wasnego usypiania,
+ * ale ich animacje s krtkie i uruchamiaj je tylko zdarzenia planszy, wic po upieniu planszy
+ * co najwyej dokocz si animacje ju rozpoczte.
+ */
+final class IdleMonitor {
+
+    private final Stage stage;
+
+    private final Board board;
+
+    private final long timeoutNanos;
+
+    private final ScheduledExecutorService executor;
+
+    private volatile long lastInput = System.nanoTime();
+
+    /**
+     * To prawda od zlecenia upienia po braku aktywnoci do nastpnego zdarzenia wejcia,
+     * aby wtek monitora nie zleca upienia co sekund.
+     */
+    private volatile boolean idle;
+
+    /**
+     * @param stage          okno gry
+     * @param board          plansza
+     * @param timeoutSeconds po ilu sekundach bez zdarze wejcia plansza jest usypiana
+     */
+    IdleMonitor(Stage stage, Board board, long timeoutSeconds) {
+        this.stage = stage;
+        this.board = board;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "idle-monitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Zaczyna obserwowa okno. Wywoywane w wtku JavaFX po ustawieniu sceny.
+     */
+    void start() {
+        stage.iconifiedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean wasIconified, Boolean iconified) {
+                if (iconified) {
+                    board.suspend();
+                } else {
+                    activity();
+                }
+            }
+        });
+        stage.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean wasFocused, Boolean focused) {
+                if (focused) {
+                    activity();
+                } else {
+                    board.suspend();
+                }
+            }
+        });
+        // Filtr, a nie handler: plansza musi si obudzi, zanim dostanie klawisz.
+        stage.getScene().addEventFilter(InputEvent.ANY, new EventHandler<InputEvent>() {
+            @Override
+            public void handle(InputEvent inputEvent) {
+                activity();
+            }
+        });
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (!idle && System.nanoTime() - lastInput > timeoutNanos) {
+                    idle = true;
+                    Platform.runLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Zdarzenie wejcia mogo przyj po zleceniu upienia.
+                            if (idle && System.nanoTime() - lastInput > timeoutNanos) {
+                                board.suspend();
+                            }
+                        }
+                    });
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void activity() {
+        lastInput = System.nanoTime();
+        idle = false;
+        if (board.isSuspended() && !stage.isIconified()) {
+            board.resume();
+        }
+    }
+
+    /**
+     * Przestaje obserwowa brak aktywnoci.
+     */
+    void stop() {
+        executor.shutdownNow();
+    }
+}
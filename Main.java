@@ -4,9 +4,26 @@
 package tetris;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.geometry.HorizontalDirection;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -15,6 +32,52 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings("unused")
 public final class Main extends Application {
 
+    /**
+     * Po ilu sekundach bez gry plansza jest usypiana.
+     */
+    private static final long IDLE_TIMEOUT_SECONDS = 120;
+
+    /**
+     * Katalog, w ktrym {@link GameAnalytics} zapisuje statystyki gier.
+     */
+    private static final Path ANALYTICS_DIRECTORY = Paths.get(System.getProperty("user.home"), ".tetris", "analytics");
+
+    /**
+     * Katalog {@link HighScoreStore}.
+     */
+    private static final Path SCORES_DIRECTORY = Paths.get(System.getProperty("user.home"), ".tetris", "scores");
+
+    /**
+     * Ile najlepszych wynikw pamita kady indeks {@link HighScoreStore}.
+     */
+    private static final int TOP_SCORES = 10;
+
+    /**
+     * Waciwo systemowa z plikiem lub potokiem nazwanym, do ktrego wysyana jest transmisja dla widzw.
+     */
+    static final String SPECTATOR_FILE_PROPERTY = "tetris.spectator.file";
+
+    /**
+     * Waciwo systemowa z portem, na ktrym widzowie ({@link SpectatorBoard}) mog si podczy.
+     */
+    static final String SPECTATOR_PORT_PROPERTY = "tetris.spectator.port";
+
+    /**
+     * Waciwo systemowa wczajca tryb wicze: Ctrl+Z cofa ustawienie tetromino, Ctrl+Y je ponawia.
+     */
+    static final String PRACTICE_PROPERTY = "tetris.practice";
+
+    private GameAnalytics analytics;
+
+    private HighScoreStore highScores;
+
+    /**
+     * Transmisje dla widzw, uywane w wtku JavaFX.
+     */
+    private final List<SpectatorFeed> spectatorFeeds = new ArrayList<>();
+
+    private volatile ServerSocket spectatorServer;
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -30,5 +93,198 @@ public final class Main extends Application {
 
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        // Upij plansz, gdy nikt nie gra.
+        Node board = scene.lookup("#board");
+        if (board instanceof Board) {
+            new IdleMonitor(primaryStage, (Board) board, IDLE_TIMEOUT_SECONDS).start();
+            coalesceScore(scene, (Board) board);
+            try {
+                analytics = new GameAnalytics((Board) board, ANALYTICS_DIRECTORY);
+            } catch (IOException e) {
+                // Bez statystyk te da si gra.
+                e.printStackTrace();
+            }
+            if (Boolean.getBoolean(PRACTICE_PROPERTY)) {
+                startPractice(scene, (Board) board);
+            }
+            recordScores((Board) board);
+            startSpectators((Board) board);
+        }
+    }
+
+    /**
+     * Wcza tryb wicze z cofaniem i ponawianiem ustawie tetromino z klawiatury.
+     */
+    private static void startPractice(Scene scene, final Board board) {
+        board.setPracticeMode(true);
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent keyEvent) {
+                if (!keyEvent.isShortcutDown()) {
+                    return;
+                }
+                if (keyEvent.getCode() == KeyCode.Z) {
+                    board.undo();
+                    keyEvent.consume();
+                } else if (keyEvent.getCode() == KeyCode.Y) {
+                    board.redo();
+                    keyEvent.consume();
+                }
+            }
+        });
+    }
+
+    /**
+     * Po kadej grze zapisuje jej wynik w {@link HighScoreStore} i wymusza zapis na dysk.
+     */
+    private void recordScores(Board board) {
+        final ScoreManager scoreManager = findScoreManager(board);
+        if (scoreManager == null) {
+            return;
+        }
+        try {
+            highScores = new HighScoreStore(SCORES_DIRECTORY, TOP_SCORES);
+        } catch (IOException e) {
+            // Bez listy wynikw te da si gra.
+            e.printStackTrace();
+            return;
+        }
+        final String player = System.getProperty("user.name");
+        board.addBoardListener(new Board.BoardListener() {
+            @Override
+            public void onDropped() {
+            }
+
+            @Override
+            public void onRowsEliminated(int rows) {
+            }
+
+            @Override
+            public void onGameOver() {
+                try {
+                    highScores.record(player, scoreManager.scoreProperty().get());
+                    highScores.sync();
+                } catch (IOException e) {
+                    // Wynik nie moe przerwa gry.
+                    e.printStackTrace();
+                }
+            }
+
+            @Override
+            public void onInvalidMove() {
+            }
+
+            @Override
+            public void onMove(HorizontalDirection horizontalDirection) {
+            }
+
+            @Override
+            public void onRotate(HorizontalDirection horizontalDirection) {
+            }
+        });
+    }
+
+    /**
+     * Zaczyna transmisj dla widzw, jeli ustawiono {@link #SPECTATOR_FILE_PROPERTY} lub {@link #SPECTATOR_PORT_PROPERTY}.
+     * Plik i poczenia s otwierane w osobnym wtku, bo otwarcie potoku czeka na czytelnika, a serwer na widzw.
+     */
+    private void startSpectators(final Board board) {
+        final String file = System.getProperty(SPECTATOR_FILE_PROPERTY);
+        final String port = System.getProperty(SPECTATOR_PORT_PROPERTY);
+        if (file == null && port == null) {
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (file != null) {
+                        addSpectator(board, new BufferedOutputStream(new FileOutputStream(file)));
+                    }
+                    if (port != null) {
+                        spectatorServer = new ServerSocket(Integer.parseInt(port));
+                        while (true) {
+                            Socket socket = spectatorServer.accept();
+                            socket.setTcpNoDelay(true);
+                            addSpectator(board, new BufferedOutputStream(socket.getOutputStream()));
+                        }
+                    }
+                } catch (IOException e) {
+                    // Serwer zamknity w stop() albo nie udao si otworzy pliku; gra toczy si dalej.
+                    if (spectatorServer == null || !spectatorServer.isClosed()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "spectator-connect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void addSpectator(final Board board, final OutputStream out) {
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                SpectatorFeed feed = new SpectatorFeed(board, out, SpectatorFeed.DEFAULT_KEYFRAME_INTERVAL);
+                spectatorFeeds.add(feed);
+                feed.start();
+            }
+        });
+    }
+
+    /**
+     * Zapisuje na dysk gry, ktre czekaj jeszcze w paczce statystyk, zamyka list wynikw i koczy transmisje dla widzw.
+     */
+    @Override
+    public void stop() throws Exception {
+        if (spectatorServer != null) {
+            spectatorServer.close();
+        }
+        for (SpectatorFeed feed : spectatorFeeds) {
+            feed.stop();
+        }
+        try {
+            if (analytics != null) {
+                analytics.close();
+            }
+        } finally {
+            if (highScores != null) {
+                highScores.close();
+            }
+        }
+    }
+
+    /**
+     * Odwiea etykiet wyniku raz na klatk przez {@link UiState}, zamiast przy kadej zmianie wyniku.
+     */
+    private static void coalesceScore(Scene scene, Board board) {
+        ScoreManager scoreManager = findScoreManager(board);
+        Node node = scene.lookup(".score");
+        if (scoreManager == null || !(node instanceof Label)) {
+            return;
+        }
+        final Label label = (Label) node;
+        final UiState uiState = new UiState();
+        label.textProperty().unbind();
+        uiState.onApply(UiState.Part.SCORE, new Runnable() {
+            @Override
+            public void run() {
+                label.setText(String.valueOf(uiState.getScore()));
+            }
+        });
+        uiState.attach(scoreManager.scoreProperty());
+    }
+
+    /**
+     * @return Licznik wyniku zarejestrowany przez gr jako suchacz planszy lub null.
+     */
+    private static ScoreManager findScoreManager(Board board) {
+        for (Board.BoardListener listener : board.getBoardListeners()) {
+            if (listener instanceof ScoreManager) {
+                return (ScoreManager) listener;
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,344 @@
+
+package tetris;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Liczy wszystkie rne pozycje kocowe osigalne z danej planszy dla ustalonego cigu tetrominos,
+ * do zadanej gbokoci, jak perft w silnikach szachowych.
+ * <p/>
+ * Ruchy s te same co na {@link Board}: obrt w lewo i w prawo, przesunicie w lewo i w prawo oraz ruch w d,
+ * kady dozwolony tylko wtedy, gdy {@link BoardRules#intersects} nie zgasza kolizji. Tetromino zostaje scalone
+ * w pozycji, z ktrej nie moe zej niej. Ustawienia koczce gr ({@link BoardRules#isGameOver}) nie s liczone.
+ * Dwa ustawienia s t sam pozycj, jeli zajmuj te same pola.
+ * <p/>
+ * Uycie: {@code Perft <tetrominos> <gboko> [wtki]} albo {@code Perft --verify [wtki]},
+ * ktre porwnuje wyniki z {@link #REFERENCE} i koczy si kodem 1 przy rnicy.
+ */
+final class Perft {
+
+    /**
+     * Wyniki wzorcowe dla pustej planszy: cig tetrominos, gboko, liczba pozycji.
+     * Uywane s tylko ksztaty, ktre gra losuje ({@link BoardRules#SHAPES}).
+     * Zmiana zasad w {@link BoardRules} zmienia te liczby.
+     */
+    static final Object[][] REFERENCE = {
+            {"I", 1, 18L},
+            {"O", 1, 9L},
+            {"T", 1, 34L},
+            {"S", 1, 17L},
+            {"X", 1, 8L},
+            {"Y", 1, 16L},
+            {"TI", 2, 634L},
+            {"LJO", 3, 11146L},
+            {"XYI", 3, 2646L},
+            {"TSZI", 4, 207707L},
+    };
+
+    /**
+     * Przesunicie pozycji X, aby zmieciy si pozycje ujemne (tetromino moe wystawa pustymi kolumnami poza lew krawd).
+     */
+    private static final int X_OFFSET = 4;
+
+    private static final int X_RANGE = BoardRules.BLOCKS_PER_ROW + X_OFFSET;
+
+    /**
+     * Maksymalna liczba stanw (obrt, x, y) jednego tetromino.
+     */
+    private static final int STATES = 4 * X_RANGE * BoardRules.ROWS;
+
+    /**
+     * Poniej tej gbokoci zadania nie s ju dzielone.
+     */
+    private static final int SPLIT_DEPTH = 2;
+
+    private final int[] sequence;
+
+    /**
+     * Tablice robocze, po jednej na poziom rekursji.
+     */
+    private final int[][] boards;
+
+    private final int[][] placements;
+
+    private final int[] queue = new int[STATES];
+
+    /**
+     * Numer przeszukiwania, w ktrym stan zosta odwiedzony; dziki temu tablicy nie trzeba czyci.
+     */
+    private final int[] visited = new int[STATES];
+
+    private int search;
+
+    /**
+     * Klucze pl zajtych przez ju znalezione ustawienia.
+     */
+    private final long[] keys = new long[STATES];
+
+    /**
+     * @param sequence indeksy ksztatw w {@link BoardRules#SHAPES}, kolejno dla kadego poziomu
+     */
+    Perft(int[] sequence) {
+        this.sequence = sequence;
+        this.boards = new int[sequence.length + 1][BoardRules.ROWS];
+        this.placements = new int[sequence.length][STATES];
+    }
+
+    private static int state(int rotation, int x, int y) {
+        return (rotation * X_RANGE + x + X_OFFSET) * BoardRules.ROWS + y;
+    }
+
+    /**
+     * Wypisuje do {@link #placements} wszystkie rne ustawienia tetromino na planszy.
+     *
+     * @return Liczba ustawie. Kade jest zakodowane jak {@link #state(int, int, int)}.
+     */
+    int placements(int[] rows, int shape, int level) {
+        int[] result = placements[level];
+        int count = 0;
+        int spawnX = BoardRules.spawnX(BoardRules.SHAPES[shape]);
+        if (BoardRules.intersects(rows, BoardRules.ROTATIONS[shape][0], spawnX, 0)) {
+            return 0;
+        }
+
+        search++;
+        int head = 0;
+        int tail = 0;
+        int start = state(0, spawnX, 0);
+        visited[start] = search;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int s = queue[head++];
+            int y = s % BoardRules.ROWS;
+            int x = (s / BoardRules.ROWS) % X_RANGE - X_OFFSET;
+            int r = s / BoardRules.ROWS / X_RANGE;
+            int[] masks = BoardRules.ROTATIONS[shape][r];
+
+            if (BoardRules.intersects(rows, masks, x, y + 1)) {
+                if (!BoardRules.isGameOver(y)) {
+                    // Rne obroty O, S, Z czy I mog zaj te same pola; liczymy je raz.
+                    long key = key(masks, x, y);
+                    boolean seen = false;
+                    for (int i = 0; i < count; i++) {
+                        if (keys[i] == key) {
+                            seen = true;
+                            break;
+                        }
+                    }
+                    if (!seen) {
+                        keys[count] = key;
+                        result[count++] = s;
+                    }
+                }
+            } else {
+                tail = visit(rows, shape, r, x, y + 1, tail);
+            }
+            tail = visit(rows, shape, r, x - 1, y, tail);
+            tail = visit(rows, shape, r, x + 1, y, tail);
+            tail = visit(rows, shape, (r + 1) & 3, x, y, tail);
+            tail = visit(rows, shape, (r + 3) & 3, x, y, tail);
+        }
+        return count;
+    }
+
+    private int visit(int[] rows, int shape, int r, int x, int y, int tail) {
+        if (x < -X_OFFSET || x >= BoardRules.BLOCKS_PER_ROW || BoardRules.intersects(rows, BoardRules.ROTATIONS[shape][r], x, y)) {
+            return tail;
+        }
+        int s = state(r, x, y);
+        if (visited[s] != search) {
+            visited[s] = search;
+            queue[tail++] = s;
+        }
+        return tail;
+    }
+
+    /**
+     * @return Klucz zajtych pl: pierwszy zajty wiersz i maski kolejnych wierszy po przesuniciu.
+     */
+    private static long key(int[] masks, int x, int y) {
+        long key = 0;
+        int top = -1;
+        for (int i = 0; i < masks.length; i++) {
+            int shifted = x < 0 ? masks[i] >>> -x : masks[i] << x;
+            if (shifted != 0 && top < 0) {
+                top = y + i;
+            }
+            if (top >= 0) {
+                key |= (long) shifted << (10 * (y + i - top));
+            }
+        }
+        return key | (long) top << 40;
+    }
+
+    /**
+     * Liczy pozycje od danego poziomu w d, w biecym wtku.
+     *
+     * @param level poziom, plansza jest w {@link #boards}[level]
+     * @return Liczba pozycji na ostatnim poziomie.
+     */
+    long count(int level) {
+        int[] rows = boards[level];
+        int shape = sequence[level];
+        int n = placements(rows, shape, level);
+        if (level == sequence.length - 1) {
+            return n;
+        }
+        long total = 0;
+        int[] next = boards[level + 1];
+        for (int i = 0; i < n; i++) {
+            place(rows, next, shape, placements[level][i]);
+            total += count(level + 1);
+        }
+        return total;
+    }
+
+    /**
+     * Kopiuje plansz, scala z ni tetromino w danym stanie i usuwa pene wiersze.
+     */
+    static void place(int[] from, int[] to, int shape, int s) {
+        int y = s % BoardRules.ROWS;
+        int x = (s / BoardRules.ROWS) % X_RANGE - X_OFFSET;
+        int r = s / BoardRules.ROWS / X_RANGE;
+        System.arraycopy(from, 0, to, 0, from.length);
+        BoardRules.merge(to, BoardRules.ROTATIONS[shape][r], x, y);
+        BoardRules.clearFullRows(to);
+    }
+
+    /**
+     * Liczy pozycje w jednym wtku.
+     *
+     * @param rows     plansza pocztkowa
+     * @param sequence ksztaty kolejnych tetrominos
+     * @return Liczba pozycji po ustawieniu wszystkich tetrominos.
+     */
+    static long perft(int[] rows, int[] sequence) {
+        if (sequence.length == 0) {
+            return 1;
+        }
+        Perft perft = new Perft(sequence);
+        System.arraycopy(rows, 0, perft.boards[0], 0, rows.length);
+        return perft.count(0);
+    }
+
+    /**
+     * Liczy pozycje, dzielc pierwsze poziomy na zadania puli fork-join.
+     */
+    static long perft(int[] rows, int[] sequence, ForkJoinPool pool) {
+        if (sequence.length == 0) {
+            return 1;
+        }
+        return pool.invoke(new Task(rows, sequence, 0));
+    }
+
+    private static final class Task extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rows;
+
+        private final int[] sequence;
+
+        private final int level;
+
+        Task(int[] rows, int[] sequence, int level) {
+            this.rows = rows;
+            this.sequence = sequence;
+            this.level = level;
+        }
+
+        @Override
+        protected Long compute() {
+            Perft perft = new Perft(sequence);
+            System.arraycopy(rows, 0, perft.boards[level], 0, rows.length);
+            if (sequence.length - level <= SPLIT_DEPTH) {
+                return perft.count(level);
+            }
+            int shape = sequence[level];
+            int n = perft.placements(rows, shape, level);
+            Task[] tasks = new Task[n];
+            for (int i = 0; i < n; i++) {
+                int[] next = new int[BoardRules.ROWS];
+                place(rows, next, shape, perft.placements[level][i]);
+                tasks[i] = new Task(next, sequence, level + 1);
+            }
+            invokeAll(tasks);
+            long total = 0;
+            for (Task task : tasks) {
+                total += task.join();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @param pieces nazwy ksztatw, np. "TSZ"
+     * @return Indeksy ksztatw w {@link BoardRules#SHAPES}.
+     */
+    static int[] parse(String pieces) {
+        int[] sequence = new int[pieces.length()];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = -1;
+            for (int s = 0; s < BoardRules.SHAPE_NAMES.length; s++) {
+                if (BoardRules.SHAPE_NAMES[s] == Character.toUpperCase(pieces.charAt(i))) {
+                    sequence[i] = s;
+                }
+            }
+            if (sequence[i] < 0) {
+                throw new IllegalArgumentException("Unknown tetromino: " + pieces.charAt(i));
+            }
+        }
+        return sequence;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: Perft <pieces> <depth> [threads] | Perft --verify [threads]");
+            System.exit(2);
+        }
+        boolean verify = args[0].equals("--verify");
+        int threadsArg = verify ? 1 : 2;
+        int threads = args.length > threadsArg ? Integer.parseInt(args[threadsArg]) : 1;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        boolean failed = false;
+        if (verify) {
+            for (Object[] reference : REFERENCE) {
+                String pieces = (String) reference[0];
+                int depth = (Integer) reference[1];
+                long expected = (Long) reference[2];
+                long actual = run(pieces, depth, pool);
+                if (actual != expected) {
+                    System.out.println("MISMATCH " + pieces + " depth " + depth + ": expected " + expected + ", got " + actual);
+                    failed = true;
+                }
+            }
+        } else {
+            run(args[0], Integer.parseInt(args[1]), pool);
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Liczy pozycje dla pustej planszy i wypisuje wynik oraz szybko.
+     * Cig tetrominos jest powtarzany, jeli gboko jest wiksza ni jego dugo.
+     */
+    private static long run(String pieces, int depth, ForkJoinPool pool) {
+        int[] shapes = parse(pieces);
+        int[] sequence = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            sequence[i] = shapes[i % shapes.length];
+        }
+        int[] rows = new int[BoardRules.ROWS];
+        long start = System.nanoTime();
+        long nodes = pool == null ? perft(rows, sequence) : perft(rows, sequence, pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(pieces + " depth " + depth + ": " + nodes + " positions, " + String.format("%.0f", nodes / seconds) + " nodes/s");
+        return nodes;
+    }
+}
@@ -0,0 +1,120 @@
+
+package tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Historia trybu wicze: nieograniczone cofanie i ponawianie ustawie tetromino.
+ * <p/>
+ * Historia jest drzewem {@link BoardState}. Nowe ustawienie po cofniciu nie kasuje wczeniejszych ruchw,
+ * tylko zaczyna now ga; {@link #redo()} idzie do ostatnio odwiedzonej gazi, a {@link #selectBranch(int)}
+ * pozwala wybra inn. Stany dziel niezmienione wiersze, wic kady wze kosztuje tyle, ile wierszy zmieni.
+ * <p/>
+ * Plansza w trybie wicze ({@link Board#setPracticeMode(boolean)}) dopisuje tu kade ustawienie
+ * i odtwarza stany przez {@link Board#restore(BoardState)}.
+ */
+final class PracticeHistory {
+
+    private static final class Node {
+
+        final BoardState state;
+
+        final Node parent;
+
+        final List<Node> children = new ArrayList<>(1);
+
+        /**
+         * Ga, do ktrej prowadzi {@link #redo()}.
+         */
+        Node redo;
+
+        Node(BoardState state, Node parent) {
+            this.state = state;
+            this.parent = parent;
+        }
+    }
+
+    private Node current;
+
+    /**
+     * @param start stan pocztkowy, np. {@link BoardState#EMPTY} albo uoona zagadka
+     */
+    PracticeHistory(BoardState start) {
+        current = new Node(start, null);
+    }
+
+    BoardState getState() {
+        return current.state;
+    }
+
+    /**
+     * Dodaje stan jako now ga biecego i przechodzi do niego.
+     */
+    void push(BoardState state) {
+        Node node = new Node(state, current);
+        current.children.add(node);
+        current.redo = node;
+        current = node;
+    }
+
+    /**
+     * Ustawia tetromino na biecym stanie i zapisuje wynik w historii.
+     *
+     * @param shape    indeks ksztatu w {@link BoardRules#SHAPES}
+     * @param rotation liczba obrotw w prawo
+     * @param x        pozycja X
+     * @param y        pozycja Y, w ktrej tetromino si zatrzymao
+     * @return Nowy stan.
+     */
+    BoardState lock(int shape, int rotation, int x, int y) {
+        push(current.state.lock(shape, rotation, x, y));
+        return current.state;
+    }
+
+    boolean canUndo() {
+        return current.parent != null;
+    }
+
+    boolean canRedo() {
+        return current.redo != null;
+    }
+
+    /**
+     * @return Fasz, jeli to stan pocztkowy.
+     */
+    boolean undo() {
+        if (current.parent == null) {
+            return false;
+        }
+        current = current.parent;
+        return true;
+    }
+
+    /**
+     * @return Fasz, jeli nie ma czego ponowi.
+     */
+    boolean redo() {
+        if (current.redo == null) {
+            return false;
+        }
+        current = current.redo;
+        return true;
+    }
+
+    /**
+     * @return Liczba gazi wychodzcych z biecego stanu.
+     */
+    int getBranchCount() {
+        return current.children.size();
+    }
+
+    /**
+     * Wybiera ga, do ktrej prowadzi {@link #redo()}.
+     *
+     * @param branch numer gazi, od 0 w kolejnoci powstania
+     */
+    void selectBranch(int branch) {
+        current.redo = current.children.get(branch);
+    }
+}
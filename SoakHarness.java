@@ -0,0 +1,277 @@
+
+package tetris;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.geometry.HorizontalDirection;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dugi test obcieniowy prawdziwej planszy, wykrywajcy wycieki wzw i suchaczy.
+ * <p/>
+ * Plansza jest rysowana programowo (Monocle, bez ekranu), impulsy id tak szybko, jak to moliwe,
+ * a animacje s przyspieszone. Losowe ruchy i upuszczenia s wykonywane raz na klatk.
+ * Co {@link #SAMPLE_EVERY} tetrominos zapisywane s: liczba wzw planszy, liczba suchaczy rozmiaru pola,
+ * liczba uruchomionych animacji, sterta po odmiecaniu i ilo pamici przydzielonej przez wtek JavaFX.
+ * Na kocu test koczy si kodem 1, jeli ktra z wielkoci cigle ronie; przydzia pamici na prbk
+ * nie moe wzrosn o wicej ni poow.
+ * <p/>
+ * Uycie: {@code SoakHarness [tetrominos]}. Wymaga Monocle na ciece klas, a do liczenia suchaczy
+ * {@code --add-opens javafx.base/com.sun.javafx.binding=ALL-UNNAMED}.
+ */
+public final class SoakHarness extends Application {
+
+    /**
+     * Co ile tetrominos zbierana jest prbka.
+     */
+    static final int SAMPLE_EVERY = 10000;
+
+    /**
+     * Pierwsze prbki s pomijane przy ocenie, bo JIT i pami podrczne jeszcze si rozgrzewaj.
+     */
+    static final int WARMUP_SAMPLES = 3;
+
+    private static final double ANIMATION_RATE = 1000;
+
+    private static final String[] METRICS = {"children", "squareSizeListeners", "runningAnimations", "heapAfterGc", "allocatedBytes"};
+
+    /**
+     * Dozwolony wzrost w drugiej poowie testu wzgldem pierwszej, dla kadej wielkoci.
+     */
+    private static final double[] SLACK = {50, 50, 5, 16 * 1024 * 1024, 0};
+
+    /**
+     * Dozwolony wzgldny wzrost: maksimum drugiej poowy moe by tyle razy wiksze od pierwszej (plus {@link #SLACK}).
+     * Przydzia pamici zaley od przebiegu gier, wic dla niego granica jest wzgldna.
+     */
+    private static final double[] GROWTH = {1, 1, 1, 1, 1.5};
+
+    private static long pieces = 1000000;
+
+    private final List<long[]> samples = new ArrayList<>();
+
+    private final Random random = new Random(1);
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private Board board;
+
+    private long spawned;
+
+    private long lastAllocated;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            pieces = Long.parseLong(args[0]);
+        }
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("prism.text", "t2k");
+        System.setProperty("javafx.animation.fullspeed", "true");
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        board = new Board();
+        board.setAnimationRate(ANIMATION_RATE);
+        stage.setScene(new Scene(board));
+        stage.show();
+
+        board.getWaitingTetrominos().addListener(new ListChangeListener<Tetromino>() {
+            @Override
+            public void onChanged(Change<? extends Tetromino> change) {
+                while (change.next()) {
+                    // Koniec gry czyci ca kolejk i nie jest odrodzeniem.
+                    if (change.wasRemoved() && !change.getList().isEmpty()) {
+                        spawned += change.getRemovedSize();
+                    }
+                }
+            }
+        });
+        board.addBoardListener(new Board.BoardListener() {
+            @Override
+            public void onDropped() {
+            }
+
+            @Override
+            public void onRowsEliminated(int rows) {
+            }
+
+            @Override
+            public void onGameOver() {
+                // Zacznij od nowa, ale nie w trakcie powiadamiania suchaczy.
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        board.start();
+                    }
+                });
+            }
+
+            @Override
+            public void onInvalidMove() {
+            }
+
+            @Override
+            public void onMove(HorizontalDirection horizontalDirection) {
+            }
+
+            @Override
+            public void onRotate(HorizontalDirection horizontalDirection) {
+            }
+        });
+
+        new AnimationTimer() {
+            private long nextSample = SAMPLE_EVERY;
+
+            @Override
+            public void handle(long now) {
+                play();
+                if (spawned >= nextSample) {
+                    nextSample += SAMPLE_EVERY;
+                    sample();
+                }
+                if (spawned >= pieces) {
+                    stop();
+                    finish();
+                }
+            }
+        }.start();
+
+        lastAllocated = allocatedBytes();
+        board.start();
+    }
+
+    /**
+     * Wykonuje losowy ruch lub obrt i upuszcza tetromino.
+     */
+    private void play() {
+        if (board.getCurrentTetromino() == null) {
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                board.move(HorizontalDirection.LEFT);
+                break;
+            case 1:
+                board.move(HorizontalDirection.RIGHT);
+                break;
+            case 2:
+                board.rotate(random.nextBoolean() ? HorizontalDirection.LEFT : HorizontalDirection.RIGHT);
+                break;
+            default:
+                board.dropDown();
+                break;
+        }
+    }
+
+    private void sample() {
+        System.gc();
+        long allocated = allocatedBytes();
+        long[] sample = {
+                board.getChildren().size(),
+                listenerCount(board.squareSizeProperty()),
+                board.getRunningAnimationCount(),
+                memory.getHeapMemoryUsage().getUsed(),
+                allocated - lastAllocated
+        };
+        lastAllocated = allocated;
+        samples.add(sample);
+
+        StringBuilder sb = new StringBuilder().append(spawned);
+        for (long value : sample) {
+            sb.append(',').append(value);
+        }
+        System.out.println(sb);
+    }
+
+    /**
+     * Porwnuje maksimum kadej wielkoci w drugiej poowie prbek z maksimum w pierwszej.
+     */
+    private void finish() {
+        boolean failed = false;
+        int from = Math.min(WARMUP_SAMPLES, samples.size());
+        int middle = from + (samples.size() - from) / 2;
+        for (int m = 0; m < METRICS.length; m++) {
+            long first = max(m, from, middle);
+            long second = max(m, middle, samples.size());
+            boolean grows = first >= 0 && second > first * GROWTH[m] + SLACK[m];
+            System.out.println(METRICS[m] + ": first half max " + first + ", second half max " + second + (grows ? " GROWING" : ""));
+            failed |= grows;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private long max(int metric, int from, int to) {
+        long max = -1;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, samples.get(i)[metric]);
+        }
+        return max;
+    }
+
+    /**
+     * @return Ilo pamici przydzielonej przez biecy wtek, lub 0, jeli maszyna wirtualna tego nie podaje.
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Liczy suchaczy waciwoci, zagldajc do jej wewntrznego pomocnika.
+     *
+     * @return Liczba suchaczy lub -1, jeli nie da si jej odczyta.
+     */
+    static int listenerCount(ObservableValue<?> observable) {
+        try {
+            Field helperField = findField(observable.getClass(), "helper");
+            helperField.setAccessible(true);
+            Object helper = helperField.get(observable);
+            if (helper == null) {
+                return 0;
+            }
+            int count = 0;
+            for (String name : new String[]{"invalidationSize", "changeSize"}) {
+                Field field = findField(helper.getClass(), name);
+                if (field != null) {
+                    field.setAccessible(true);
+                    count += field.getInt(helper);
+                }
+            }
+            // Pomocnik z jednym suchaczem nie ma licznikw.
+            return count == 0 ? 1 : count;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // Szukaj w nadklasie.
+            }
+        }
+        return null;
+    }
+}
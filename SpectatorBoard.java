@@ -0,0 +1,239 @@
+
+package tetris;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Stage;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Plansza tylko do ogldania, odtwarzana ze strumienia {@link SpectatorStream}.
+ * <p/>
+ * Strumie jest czytany w osobnym wtku, a plansza jest rysowana najwyej raz na klatk.
+ * Prostokty s tworzone raz, potem zmienia si tylko ich widoczno i kolor.
+ * Obok planszy jest podgld nastpnych tetrominos.
+ * <p/>
+ * Uycie: {@code SpectatorBoard <host>:<port>} oglda gr uruchomion z {@code -Dtetris.spectator.port=<port>},
+ * a {@code SpectatorBoard <plik>} czyta plik lub potok nazwany zapisany z {@code -Dtetris.spectator.file=<plik>}.
+ */
+final class SpectatorBoard extends StackPane {
+
+    private static final double SQUARE_SIZE = 35;
+
+    private static final Color BLOCK = Color.GRAY;
+
+    private static final Color PIECE = Color.ORANGE;
+
+    private static final double PREVIEW_SQUARE_SIZE = 15;
+
+    private static final double PREVIEW_WIDTH = PREVIEW_SQUARE_SIZE * (SpectatorStream.MAX_PIECE_ROWS + 1);
+
+    private final Rectangle[][] cells = new Rectangle[BoardRules.BLOCKS_PER_COLUMN][BoardRules.BLOCKS_PER_ROW];
+
+    private final Rectangle[][][] previewCells = new Rectangle[SpectatorStream.MAX_PREVIEWS][SpectatorStream.MAX_PIECE_ROWS][SpectatorStream.MAX_PIECE_ROWS];
+
+    /**
+     * Wiersze biecego tetromino po obrocie.
+     */
+    private final int[] piece = new int[SpectatorStream.MAX_PIECE_ROWS];
+
+    /**
+     * Stan czytany przez wtek strumienia.
+     */
+    private final SpectatorStream.State received = new SpectatorStream.State();
+
+    /**
+     * Kopia stanu rysowana w wtku JavaFX.
+     */
+    private final SpectatorStream.State shown = new SpectatorStream.State();
+
+    private final AnimationTimer timer;
+
+    private boolean dirty;
+
+    private Thread readerThread;
+
+    /**
+     * tworzenie planszy widza.
+     */
+    SpectatorBoard() {
+        // Inne id ni plansza gry, bo Main szuka jej przez "#board".
+        setId("spectatorBoard");
+        setMinWidth(SQUARE_SIZE * BoardRules.BLOCKS_PER_ROW + PREVIEW_WIDTH);
+        setMinHeight(SQUARE_SIZE * BoardRules.BLOCKS_PER_COLUMN);
+        maxWidthProperty().bind(minWidthProperty());
+        maxHeightProperty().bind(minHeightProperty());
+        setAlignment(Pos.TOP_LEFT);
+
+        Pane pane = new Pane();
+        for (int i = 0; i < BoardRules.BLOCKS_PER_COLUMN; i++) {
+            for (int j = 0; j < BoardRules.BLOCKS_PER_ROW; j++) {
+                Rectangle rectangle = new Rectangle(j * SQUARE_SIZE, i * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
+                rectangle.setArcHeight(7);
+                rectangle.setArcWidth(7);
+                rectangle.setVisible(false);
+                cells[i][j] = rectangle;
+                pane.getChildren().add(rectangle);
+            }
+        }
+        pane.setMinWidth(SQUARE_SIZE * BoardRules.BLOCKS_PER_ROW);
+
+        Pane previewPane = new Pane();
+        for (int p = 0; p < SpectatorStream.MAX_PREVIEWS; p++) {
+            double top = p * PREVIEW_WIDTH;
+            for (int i = 0; i < SpectatorStream.MAX_PIECE_ROWS; i++) {
+                for (int j = 0; j < SpectatorStream.MAX_PIECE_ROWS; j++) {
+                    Rectangle rectangle = new Rectangle(PREVIEW_SQUARE_SIZE / 2 + j * PREVIEW_SQUARE_SIZE, top + i * PREVIEW_SQUARE_SIZE, PREVIEW_SQUARE_SIZE, PREVIEW_SQUARE_SIZE);
+                    rectangle.setArcHeight(3);
+                    rectangle.setArcWidth(3);
+                    rectangle.setFill(BLOCK);
+                    rectangle.setVisible(false);
+                    previewCells[p][i][j] = rectangle;
+                    previewPane.getChildren().add(rectangle);
+                }
+            }
+        }
+        getChildren().add(new HBox(pane, previewPane));
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                render();
+            }
+        };
+    }
+
+    /**
+     * Zaczyna czyta strumie. Plansza jest pusta do pierwszej ramki kluczowej.
+     *
+     * @param in strumie z {@link SpectatorFeed}
+     */
+    void watch(final InputStream in) {
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SpectatorStream.Reader reader = new SpectatorStream.Reader(in);
+                SpectatorStream.State state = new SpectatorStream.State();
+                try {
+                    while (reader.read(state)) {
+                        synchronized (received) {
+                            received.copyFrom(state);
+                            dirty = true;
+                        }
+                    }
+                } catch (IOException e) {
+                    // Koniec transmisji.
+                }
+            }
+        }, "spectator-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        timer.start();
+    }
+
+    /**
+     * Przestaje rysowa. Wtek strumienia koczy si razem z zamkniciem strumienia.
+     */
+    void stop() {
+        timer.stop();
+    }
+
+    private void render() {
+        synchronized (received) {
+            if (!dirty) {
+                return;
+            }
+            shown.copyFrom(received);
+            dirty = false;
+        }
+        shown.rotatedPiece(piece);
+        for (int i = 0; i < BoardRules.BLOCKS_PER_COLUMN; i++) {
+            int row = shown.rows[i + BoardRules.HIDDEN_ROWS];
+            int pieceRow = i + BoardRules.HIDDEN_ROWS - shown.pieceY;
+            int pieceMask = 0;
+            if (pieceRow >= 0 && pieceRow < shown.pieceSize) {
+                pieceMask = shown.pieceX < 0 ? piece[pieceRow] >>> -shown.pieceX : piece[pieceRow] << shown.pieceX;
+            }
+            for (int j = 0; j < BoardRules.BLOCKS_PER_ROW; j++) {
+                Rectangle rectangle = cells[i][j];
+                if ((pieceMask & (1 << j)) != 0) {
+                    rectangle.setFill(PIECE);
+                    rectangle.setVisible(true);
+                } else if ((row & (1 << j)) != 0) {
+                    rectangle.setFill(BLOCK);
+                    rectangle.setVisible(true);
+                } else {
+                    rectangle.setVisible(false);
+                }
+            }
+        }
+        for (int p = 0; p < SpectatorStream.MAX_PREVIEWS; p++) {
+            int size = p < shown.previewCount ? shown.previewSizes[p] : 0;
+            for (int i = 0; i < SpectatorStream.MAX_PIECE_ROWS; i++) {
+                int row = i < size ? shown.previews[p][i] : 0;
+                for (int j = 0; j < SpectatorStream.MAX_PIECE_ROWS; j++) {
+                    previewCells[p][i][j].setVisible((row & (1 << j)) != 0);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: SpectatorBoard <host>:<port> | <file>");
+            System.exit(2);
+        }
+        Application.launch(Viewer.class, args);
+    }
+
+    /**
+     * Okno widza z jedn plansz.
+     */
+    public static final class Viewer extends Application {
+
+        private SpectatorBoard board;
+
+        private InputStream in;
+
+        @Override
+        public void start(Stage stage) throws IOException {
+            List<String> args = getParameters().getRaw();
+            String source = args.get(0);
+            int colon = source.lastIndexOf(':');
+            if (colon > 0 && source.substring(colon + 1).matches("[0-9]+")) {
+                Socket socket = new Socket(source.substring(0, colon), Integer.parseInt(source.substring(colon + 1)));
+                in = new BufferedInputStream(socket.getInputStream());
+            } else {
+                in = new BufferedInputStream(new FileInputStream(source));
+            }
+            board = new SpectatorBoard();
+            stage.setTitle("Gra_tetris - " + source);
+            stage.setScene(new Scene(board));
+            stage.show();
+            board.watch(in);
+        }
+
+        @Override
+        public void stop() throws IOException {
+            if (board != null) {
+                board.stop();
+            }
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
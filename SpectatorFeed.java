@@ -0,0 +1,147 @@
+
+package tetris;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Wysya stan planszy do widzw przez {@link SpectatorStream}, raz na klatk.
+ * <p/>
+ * Wtek JavaFX tylko zbiera stan; zapis do strumienia odbywa si w osobnym wtku, wic wolny widz nie wstrzymuje gry.
+ * Midzy wtkami jest jedno miejsce: jeli zapis nie nada, nowszy stan zastpuje niewysany.
+ * Nic nie ginie, bo ramka rnicowa jest liczona wzgldem ostatnio wysanego stanu.
+ */
+final class SpectatorFeed {
+
+    /**
+     * Domylnie ramka kluczowa co 60 ramek, czyli mniej wicej co sekund.
+     */
+    static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private final Board board;
+
+    private final OutputStream out;
+
+    private final SpectatorStream.Writer writer;
+
+    /**
+     * Stan czekajcy na zapis, zbierany w wtku JavaFX. Suy te jako blokada dla {@link #hasPending} i {@link #closed}.
+     */
+    private final SpectatorStream.State pending = new SpectatorStream.State();
+
+    /**
+     * Kopia stanu zapisywana w wtku zapisu.
+     */
+    private final SpectatorStream.State sending = new SpectatorStream.State();
+
+    private final AnimationTimer timer;
+
+    private boolean hasPending;
+
+    private boolean closed;
+
+    private Thread writerThread;
+
+    /**
+     * @param board            obserwowana plansza
+     * @param out              strumie docelowy
+     * @param keyframeInterval co ile wysanych ramek wysyana jest ramka kluczowa
+     */
+    SpectatorFeed(Board board, OutputStream out, int keyframeInterval) {
+        this.board = board;
+        this.out = out;
+        this.writer = new SpectatorStream.Writer(out, keyframeInterval);
+        this.timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                tick();
+            }
+        };
+    }
+
+    private void tick() {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            System.arraycopy(board.getOccupancy(), 0, pending.rows, 0, BoardRules.ROWS);
+
+            Tetromino current = board.getCurrentTetromino();
+            pending.setPiece(current == null ? null : current.getMatrix(), board.getCurrentX(), board.getCurrentY(), board.getCurrentRotation());
+
+            List<Tetromino> waiting = board.getWaitingTetrominos();
+            pending.previewCount = Math.min(waiting.size(), SpectatorStream.MAX_PREVIEWS);
+            for (int p = 0; p < pending.previewCount; p++) {
+                pending.setPreview(p, waiting.get(p).getMatrix());
+            }
+
+            hasPending = true;
+            pending.notify();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                synchronized (pending) {
+                    while (!hasPending && !closed) {
+                        pending.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    sending.copyFrom(pending);
+                    hasPending = false;
+                }
+                writer.write(sending);
+            }
+        } catch (InterruptedException e) {
+            // Zatrzymany razem z aplikacj.
+        } catch (IOException e) {
+            // Widz si rozczy, gra toczy si dalej bez niego.
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    stop();
+                }
+            });
+        }
+    }
+
+    /**
+     * Zaczyna wysya stan planszy.
+     */
+    void start() {
+        if (writerThread == null) {
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "spectator-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        timer.start();
+    }
+
+    /**
+     * Przestaje wysya stan planszy i zamyka strumie. Wywoywane w wtku JavaFX.
+     */
+    void stop() {
+        timer.stop();
+        synchronized (pending) {
+            closed = true;
+            pending.notify();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Strumie i tak nie jest ju uywany.
+        }
+    }
+}
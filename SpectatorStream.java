@@ -0,0 +1,402 @@
+
+package tetris;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binarny strumie stanu planszy dla widzw.
+ * <p/>
+ * Kada ramka zaczyna si znacznikiem i dugoci (2 bajty). Ramka kluczowa zawiera cay stan,
+ * ramka rnicowa tylko to, co zmienio si od poprzedniej: mask zmienionych wierszy i ich zawarto,
+ * a jeli si zmieniy, take tetromino i podgld. Jeli nic si nie zmienio, ramka nie jest wysyana.
+ * Ramki kluczowe pojawiaj si co kilka ramek, aby widz podczony w trakcie gry mg si zsynchronizowa.
+ */
+final class SpectatorStream {
+
+    static final byte KEYFRAME = 'K';
+
+    static final byte DELTA = 'D';
+
+    /**
+     * Pocztek treci ramki kluczowej, pozwala znale j w strumieniu: "TSPK".
+     */
+    static final int KEYFRAME_MAGIC = 0x5453504B;
+
+    /**
+     * Maksymalna liczba tetrominos w podgldzie.
+     */
+    static final int MAX_PREVIEWS = 4;
+
+    /**
+     * Maksymalna liczba wierszy macierzy tetromino.
+     */
+    static final int MAX_PIECE_ROWS = 4;
+
+    private static final int PIECE_CHANGED = 1;
+
+    private static final int PREVIEW_CHANGED = 2;
+
+    private static final int MAX_FRAME = 512;
+
+    private SpectatorStream() {
+    }
+
+    /**
+     * Stan planszy widziany przez widza.
+     */
+    static final class State {
+
+        final int[] rows = new int[BoardRules.ROWS];
+
+        int pieceX;
+
+        int pieceY;
+
+        int pieceRotation;
+
+        /**
+         * Liczba wierszy macierzy biecego tetromino, 0 jeli go nie ma.
+         */
+        int pieceSize;
+
+        final int[] piece = new int[MAX_PIECE_ROWS];
+
+        /**
+         * Tablica robocza dla obrotw.
+         */
+        private final int[] turned = new int[MAX_PIECE_ROWS];
+
+        int previewCount;
+
+        final int[] previewSizes = new int[MAX_PREVIEWS];
+
+        final int[][] previews = new int[MAX_PREVIEWS][MAX_PIECE_ROWS];
+
+        /**
+         * Ustawia biece tetromino. Macierz jest zapisywana w pooeniu pocztkowym, a obrt osobno,
+         * tak jak w {@link Board}: obrcona macierz to pooenie pocztkowe obrcone {@code rotation} razy w prawo.
+         *
+         * @param matrix   obrcona macierz tetromino lub null
+         * @param rotation liczba obrotw w prawo, od 0 do 3
+         */
+        void setPiece(int[][] matrix, int x, int y, int rotation) {
+            pieceSize = matrix == null ? 0 : Math.min(matrix.length, MAX_PIECE_ROWS);
+            for (int i = 0; i < pieceSize; i++) {
+                piece[i] = BoardRules.rowMask(matrix[i]);
+            }
+            for (int r = 0; r < rotation; r++) {
+                rotate(piece, pieceSize, false);
+            }
+            pieceX = x;
+            pieceY = y;
+            pieceRotation = rotation;
+        }
+
+        /**
+         * Wpisuje wiersze biecego tetromino po obrocie o {@link #pieceRotation}.
+         *
+         * @param rows tablica o dugoci {@link #MAX_PIECE_ROWS}
+         */
+        void rotatedPiece(int[] rows) {
+            System.arraycopy(piece, 0, rows, 0, MAX_PIECE_ROWS);
+            for (int r = 0; r < pieceRotation; r++) {
+                rotate(rows, pieceSize, true);
+            }
+        }
+
+        /**
+         * Obraca kwadratow macierz wierszy w miejscu, jak {@link BoardRules#rotate(int[][], boolean)}.
+         */
+        private void rotate(int[] rows, int size, boolean clockwise) {
+            int[] rotated = turned;
+            for (int i = 0; i < size; i++) {
+                rotated[i] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if ((rows[i] & (1 << j)) != 0) {
+                        if (clockwise) {
+                            rotated[j] |= 1 << (size - 1 - i);
+                        } else {
+                            rotated[size - 1 - j] |= 1 << i;
+                        }
+                    }
+                }
+            }
+            System.arraycopy(rotated, 0, rows, 0, size);
+        }
+
+        /**
+         * Ustawia tetromino na danej pozycji podgldu.
+         */
+        void setPreview(int index, int[][] matrix) {
+            previewSizes[index] = Math.min(matrix.length, MAX_PIECE_ROWS);
+            for (int i = 0; i < previewSizes[index]; i++) {
+                previews[index][i] = BoardRules.rowMask(matrix[i]);
+            }
+        }
+
+        boolean samePiece(State other) {
+            if (pieceSize != other.pieceSize || pieceX != other.pieceX || pieceY != other.pieceY || pieceRotation != other.pieceRotation) {
+                return false;
+            }
+            for (int i = 0; i < pieceSize; i++) {
+                if (piece[i] != other.piece[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean samePreview(State other) {
+            if (previewCount != other.previewCount) {
+                return false;
+            }
+            for (int p = 0; p < previewCount; p++) {
+                if (previewSizes[p] != other.previewSizes[p]) {
+                    return false;
+                }
+                for (int i = 0; i < previewSizes[p]; i++) {
+                    if (previews[p][i] != other.previews[p][i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void copyFrom(State other) {
+            System.arraycopy(other.rows, 0, rows, 0, rows.length);
+            pieceX = other.pieceX;
+            pieceY = other.pieceY;
+            pieceRotation = other.pieceRotation;
+            pieceSize = other.pieceSize;
+            System.arraycopy(other.piece, 0, piece, 0, MAX_PIECE_ROWS);
+            previewCount = other.previewCount;
+            System.arraycopy(other.previewSizes, 0, previewSizes, 0, MAX_PREVIEWS);
+            for (int p = 0; p < MAX_PREVIEWS; p++) {
+                System.arraycopy(other.previews[p], 0, previews[p], 0, MAX_PIECE_ROWS);
+            }
+        }
+    }
+
+    /**
+     * Zapisuje kolejne stany jako ramki. Nie alokuje pamici na ramk.
+     */
+    static final class Writer {
+
+        private final OutputStream out;
+
+        private final int keyframeInterval;
+
+        private final State previous = new State();
+
+        private final ByteBuffer frame = ByteBuffer.allocate(MAX_FRAME);
+
+        private int sinceKeyframe;
+
+        private boolean started;
+
+        /**
+         * @param out              strumie docelowy, np. potok, plik lub gniazdo
+         * @param keyframeInterval co ile ramek wysyana jest ramka kluczowa
+         */
+        Writer(OutputStream out, int keyframeInterval) {
+            this.out = out;
+            this.keyframeInterval = keyframeInterval;
+        }
+
+        /**
+         * Zapisuje stan jako ramk kluczow lub rnicow.
+         *
+         * @param state biecy stan
+         * @return Fasz, jeli nic si nie zmienio i nic nie zostao zapisane.
+         * @throws IOException jeli zapis si nie powid
+         */
+        boolean write(State state) throws IOException {
+            frame.clear();
+            if (!started || ++sinceKeyframe >= keyframeInterval) {
+                frame.put(KEYFRAME).putShort((short) 0);
+                frame.putInt(KEYFRAME_MAGIC);
+                for (int row : state.rows) {
+                    frame.putShort((short) row);
+                }
+                putPiece(state);
+                putPreview(state);
+                sinceKeyframe = 0;
+                started = true;
+            } else {
+                int changedRows = 0;
+                for (int i = 0; i < BoardRules.ROWS; i++) {
+                    if (state.rows[i] != previous.rows[i]) {
+                        changedRows |= 1 << i;
+                    }
+                }
+                int flags = (state.samePiece(previous) ? 0 : PIECE_CHANGED) | (state.samePreview(previous) ? 0 : PREVIEW_CHANGED);
+                if (changedRows == 0 && flags == 0) {
+                    return false;
+                }
+                frame.put(DELTA).putShort((short) 0);
+                frame.putInt(changedRows);
+                for (int i = 0; i < BoardRules.ROWS; i++) {
+                    if ((changedRows & (1 << i)) != 0) {
+                        frame.putShort((short) state.rows[i]);
+                    }
+                }
+                frame.put((byte) flags);
+                if ((flags & PIECE_CHANGED) != 0) {
+                    putPiece(state);
+                }
+                if ((flags & PREVIEW_CHANGED) != 0) {
+                    putPreview(state);
+                }
+            }
+            frame.putShort(1, (short) (frame.position() - 3));
+            out.write(frame.array(), 0, frame.position());
+            out.flush();
+            previous.copyFrom(state);
+            return true;
+        }
+
+        private void putPiece(State state) {
+            frame.put((byte) state.pieceX).put((byte) state.pieceY).put((byte) state.pieceRotation).put((byte) state.pieceSize);
+            for (int i = 0; i < state.pieceSize; i++) {
+                frame.putShort((short) state.piece[i]);
+            }
+        }
+
+        private void putPreview(State state) {
+            frame.put((byte) state.previewCount);
+            for (int p = 0; p < state.previewCount; p++) {
+                frame.put((byte) state.previewSizes[p]);
+                for (int i = 0; i < state.previewSizes[p]; i++) {
+                    frame.putShort((short) state.previews[p][i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Czyta ramki i odtwarza stan. Ramki rnicowe przed pierwsz ramk kluczow s pomijane.
+     */
+    static final class Reader {
+
+        private final DataInputStream in;
+
+        private final ByteBuffer frame = ByteBuffer.allocate(MAX_FRAME);
+
+        private boolean synced;
+
+        Reader(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        /**
+         * Czyta nastpn ramk i nakada j na stan.
+         *
+         * @param state stan, ktry zostanie uaktualniony
+         * @return Fasz na kocu strumienia.
+         * @throws IOException jeli strumie jest uszkodzony
+         */
+        boolean read(State state) throws IOException {
+            while (true) {
+                int tag = in.read();
+                if (tag < 0) {
+                    return false;
+                }
+                if (tag != KEYFRAME && (tag != DELTA || !synced)) {
+                    // Szukamy pocztku ramki kluczowej.
+                    synced = false;
+                    continue;
+                }
+                int length;
+                try {
+                    length = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    return false;
+                }
+                if (length > MAX_FRAME) {
+                    synced = false;
+                    continue;
+                }
+                frame.clear();
+                frame.limit(length);
+                try {
+                    in.readFully(frame.array(), 0, length);
+                } catch (EOFException e) {
+                    return false;
+                }
+                try {
+                    if (tag == KEYFRAME ? readKeyframe(state) : readDelta(state)) {
+                        synced = true;
+                        return true;
+                    }
+                } catch (BufferUnderflowException e) {
+                    // Ramka krtsza ni zapowiadana tre.
+                }
+                synced = false;
+            }
+        }
+
+        private boolean readKeyframe(State state) {
+            if (frame.getInt() != KEYFRAME_MAGIC) {
+                return false;
+            }
+            for (int i = 0; i < BoardRules.ROWS; i++) {
+                state.rows[i] = frame.getShort() & 0xFFFF;
+            }
+            return getPiece(state) && getPreview(state);
+        }
+
+        private boolean readDelta(State state) {
+            int changedRows = frame.getInt();
+            for (int i = 0; i < BoardRules.ROWS; i++) {
+                if ((changedRows & (1 << i)) != 0) {
+                    state.rows[i] = frame.getShort() & 0xFFFF;
+                }
+            }
+            int flags = frame.get();
+            return ((flags & PIECE_CHANGED) == 0 || getPiece(state)) && ((flags & PREVIEW_CHANGED) == 0 || getPreview(state));
+        }
+
+        private boolean getPiece(State state) {
+            state.pieceX = frame.get();
+            state.pieceY = frame.get();
+            state.pieceRotation = frame.get();
+            state.pieceSize = frame.get();
+            if (state.pieceSize < 0 || state.pieceSize > MAX_PIECE_ROWS) {
+                state.pieceSize = 0;
+                return false;
+            }
+            for (int i = 0; i < state.pieceSize; i++) {
+                state.piece[i] = frame.getShort() & 0xFFFF;
+            }
+            return true;
+        }
+
+        private boolean getPreview(State state) {
+            state.previewCount = frame.get();
+            if (state.previewCount < 0 || state.previewCount > MAX_PREVIEWS) {
+                state.previewCount = 0;
+                return false;
+            }
+            for (int p = 0; p < state.previewCount; p++) {
+                state.previewSizes[p] = frame.get();
+                if (state.previewSizes[p] < 0 || state.previewSizes[p] > MAX_PIECE_ROWS) {
+                    state.previewCount = 0;
+                    return false;
+                }
+                for (int i = 0; i < state.previewSizes[p]; i++) {
+                    state.previews[p][i] = frame.getShort() & 0xFFFF;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+
+package tetris;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.value.ObservableIntegerValue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zbiera zmiany stanu interfejsu i nakada je najwyej raz na klatk.
+ * <p/>
+ * Zmiany rde tylko oznaczaj czci interfejsu jako nieaktualne, bez liczenia wartoci.
+ * Widoki rejestruj si przez {@link #onApply(Part, Runnable)} i s odwieane w jednym {@link AnimationTimer},
+ * wic tekst i ukad licz si raz, ile by zdarze nie przyszo w tej klatce.
+ * Zegar dziaa tylko wtedy, gdy jest co do odwieenia.
+ * <p/>
+ * Wynik wywietlany przez widoki naley do tego stanu: jest czytany ze rda raz na klatk w {@link #apply()}.
+ * Podgld i nakadka z powiadomieniami nie przechodz przez ten stan, bo same suchaj planszy i wyniku.
+ * <p/>
+ * Wszystkie metody wywouje si w wtku JavaFX.
+ */
+final class UiState {
+
+    /**
+     * Czci interfejsu, ktre mona odwiey osobno.
+     */
+    enum Part {
+        SCORE
+    }
+
+    private final EnumSet<Part> dirty = EnumSet.noneOf(Part.class);
+
+    private final Map<Part, List<Runnable>> appliers = new EnumMap<>(Part.class);
+
+    private final AnimationTimer timer;
+
+    private boolean running;
+
+    private ObservableIntegerValue scoreSource;
+
+    private int score;
+
+    /**
+     * tworzenie stanu interfejsu.
+     */
+    UiState() {
+        for (Part part : Part.values()) {
+            appliers.put(part, new ArrayList<Runnable>());
+        }
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                apply();
+            }
+        };
+    }
+
+    /**
+     * Podcza stan do rda wyniku: kada zmiana oznacza wynik jako nieaktualny.
+     *
+     * @param score wynik, np. z {@link ScoreManager#scoreProperty()}
+     */
+    void attach(ObservableIntegerValue score) {
+        scoreSource = score;
+        score.addListener(new InvalidationListener() {
+            @Override
+            public void invalidated(Observable observable) {
+                markDirty(Part.SCORE);
+            }
+        });
+        markDirty(Part.SCORE);
+    }
+
+    /**
+     * Rejestruje odwieenie czci interfejsu. Wywoywane raz na klatk, jeli cz jest nieaktualna.
+     */
+    void onApply(Part part, Runnable applier) {
+        appliers.get(part).add(applier);
+    }
+
+    /**
+     * Oznacza cz jako nieaktualn; zostanie odwieona w najbliszej klatce.
+     */
+    void markDirty(Part part) {
+        dirty.add(part);
+        if (!running) {
+            running = true;
+            timer.start();
+        }
+    }
+
+    private void apply() {
+        if (dirty.isEmpty()) {
+            running = false;
+            timer.stop();
+            return;
+        }
+        // Kopia, bo odwieenie moe oznaczy co na nastpn klatk.
+        EnumSet<Part> parts = EnumSet.copyOf(dirty);
+        dirty.clear();
+        if (parts.contains(Part.SCORE) && scoreSource != null) {
+            score = scoreSource.get();
+        }
+        for (Part part : parts) {
+            for (Runnable applier : appliers.get(part)) {
+                applier.run();
+            }
+        }
+    }
+
+    /**
+     * @return Wynik z ostatniego odwieenia.
+     */
+    int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,265 @@
+
+package tetris;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dobiera wagi bota metod entropii krzyowej.
+ * <p/>
+ * W kadym pokoleniu losuje kandydatw z rozkadu normalnego, rozgrywa nimi te same gry
+ * (wsplne ziarna cigw tetrominos) rwnolegle na wszystkich rdzeniach i zawa rozkad
+ * do najlepszych kandydatw. Ocena kandydata to rednia liczba wierszy usunitych w grze,
+ * czyli suma wartoci, ktre {@link Board} zgasza w {@link Board.BoardListener#onRowsEliminated(int)}.
+ * <p/>
+ * Po kadym pokoleniu stan zapisywany jest do pliku, z ktrego kolejne uruchomienie wznawia strojenie.
+ * <p/>
+ * Uycie: {@code WeightTuner <checkpoint> [pokolenia] [populacja] [gry] [maks. tetrominos] [ziarno]}
+ */
+final class WeightTuner {
+
+    private static final int CHECKPOINT_MAGIC = 0x54554E45;
+
+    private static final int CHECKPOINT_VERSION = 1;
+
+    /**
+     * Cz populacji, z ktrej liczony jest nowy rozkad.
+     */
+    private static final double ELITE_FRACTION = 0.2;
+
+    /**
+     * Szum dodawany do odchylenia, aby rozkad nie zapad si za wczenie.
+     */
+    private static final double NOISE = 0.1;
+
+    private final Path checkpoint;
+
+    private final int population;
+
+    private final int games;
+
+    private final int maxPieces;
+
+    private final ExecutorService executor;
+
+    private long seed;
+
+    private int generation;
+
+    private double[] mean = new double[BoardFeatures.COUNT];
+
+    private double[] sigma = new double[BoardFeatures.COUNT];
+
+    private double[] best;
+
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+
+    WeightTuner(Path checkpoint, int population, int games, int maxPieces, long seed, ExecutorService executor) throws IOException {
+        this.checkpoint = checkpoint;
+        this.population = population;
+        this.games = games;
+        this.maxPieces = maxPieces;
+        this.seed = seed;
+        this.executor = executor;
+        Arrays.fill(sigma, 10);
+        if (Files.exists(checkpoint)) {
+            load();
+        }
+    }
+
+    /**
+     * Rozgrywa jedn gr botem.
+     *
+     * @param weights   wagi bota
+     * @param gameSeed  ziarno cigu tetrominos
+     * @param maxPieces maksymalna liczba tetrominos
+     * @return Liczba usunitych wierszy.
+     */
+    static int playGame(double[] weights, long gameSeed, int maxPieces) {
+        Bot bot = new Bot(weights);
+        Random pieces = new Random(gameSeed);
+        int[] rows = new int[BoardRules.ROWS];
+        int lines = 0;
+        for (int i = 0; i < maxPieces; i++) {
+            int cleared = bot.play(rows, pieces.nextInt(BoardRules.SHAPES.length));
+            if (cleared < 0) {
+                break;
+            }
+            lines += cleared;
+        }
+        return lines;
+    }
+
+    /**
+     * Wykonuje jedno pokolenie i zapisuje stan.
+     */
+    void step() throws IOException, InterruptedException, ExecutionException {
+        Random random = new Random(seed ^ (generation * 0x9E3779B97F4A7C15L));
+        final double[][] candidates = new double[population][BoardFeatures.COUNT];
+        for (double[] candidate : candidates) {
+            for (int w = 0; w < BoardFeatures.COUNT; w++) {
+                candidate[w] = mean[w] + sigma[w] * random.nextGaussian();
+            }
+        }
+        final long[] gameSeeds = new long[games];
+        for (int g = 0; g < games; g++) {
+            gameSeeds[g] = random.nextLong();
+        }
+
+        // Jedno zadanie na gr, aby wszystkie rdzenie byy zajte take przy maej populacji.
+        List<Future<Integer>> futures = new ArrayList<>(population * games);
+        for (int c = 0; c < population; c++) {
+            for (int g = 0; g < games; g++) {
+                final double[] weights = candidates[c];
+                final long gameSeed = gameSeeds[g];
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return playGame(weights, gameSeed, maxPieces);
+                    }
+                }));
+            }
+        }
+        final double[] fitness = new double[population];
+        for (int i = 0; i < futures.size(); i++) {
+            fitness[i / games] += futures.get(i).get();
+        }
+
+        Integer[] order = new Integer[population];
+        for (int c = 0; c < population; c++) {
+            fitness[c] /= games;
+            order[c] = c;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(fitness[b], fitness[a]);
+            }
+        });
+
+        int elite = Math.max(1, (int) (population * ELITE_FRACTION));
+        for (int w = 0; w < BoardFeatures.COUNT; w++) {
+            double sum = 0;
+            for (int e = 0; e < elite; e++) {
+                sum += candidates[order[e]][w];
+            }
+            double m = sum / elite;
+            double variance = 0;
+            for (int e = 0; e < elite; e++) {
+                double d = candidates[order[e]][w] - m;
+                variance += d * d;
+            }
+            mean[w] = m;
+            sigma[w] = Math.sqrt(variance / elite) + NOISE;
+        }
+
+        if (fitness[order[0]] > bestFitness) {
+            bestFitness = fitness[order[0]];
+            best = candidates[order[0]].clone();
+        }
+        generation++;
+        save();
+
+        System.out.println("generation " + generation + ": best " + fitness[order[0]] + ", all-time best " + bestFitness + " " + describe(best));
+    }
+
+    private static String describe(double[] weights) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int w = 0; w < BoardFeatures.COUNT; w++) {
+            if (w > 0) {
+                sb.append(", ");
+            }
+            sb.append(BoardFeatures.NAMES[w]).append('=').append(String.format("%.3f", weights[w]));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Zapisuje stan do pliku tymczasowego i podmienia plik, aby przerwany zapis nie zniszczy punktu kontrolnego.
+     */
+    private void save() throws IOException {
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp); DataOutputStream data = new DataOutputStream(out)) {
+            data.writeInt(CHECKPOINT_MAGIC);
+            data.writeInt(CHECKPOINT_VERSION);
+            data.writeLong(seed);
+            data.writeInt(generation);
+            writeWeights(data, mean);
+            writeWeights(data, sigma);
+            data.writeDouble(bestFitness);
+            writeWeights(data, best);
+        }
+        Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        try (InputStream in = Files.newInputStream(checkpoint); DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != CHECKPOINT_MAGIC || data.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Not a tuner checkpoint: " + checkpoint);
+            }
+            seed = data.readLong();
+            generation = data.readInt();
+            mean = readWeights(data);
+            sigma = readWeights(data);
+            bestFitness = data.readDouble();
+            best = readWeights(data);
+        }
+    }
+
+    private static void writeWeights(DataOutputStream data, double[] weights) throws IOException {
+        for (int w = 0; w < BoardFeatures.COUNT; w++) {
+            data.writeDouble(weights[w]);
+        }
+    }
+
+    private static double[] readWeights(DataInputStream data) throws IOException {
+        double[] weights = new double[BoardFeatures.COUNT];
+        for (int w = 0; w < BoardFeatures.COUNT; w++) {
+            weights[w] = data.readDouble();
+        }
+        return weights;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: WeightTuner <checkpoint> [generations] [population] [games] [maxPieces] [seed]");
+            System.exit(2);
+        }
+        int generations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int population = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int maxPieces = args.length > 4 ? Integer.parseInt(args[4]) : 5000;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            WeightTuner tuner = new WeightTuner(Paths.get(args[0]), population, games, maxPieces, seed, executor);
+            while (tuner.getGeneration() < generations) {
+                tuner.step();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+
+package tetris;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * cieka {@link BatchEvaluator} na Vector API: jedna operacja liczy cechy {@link #SPECIES} plansz naraz.
+ * <p/>
+ * Wymaga moduu {@code jdk.incubator.vector}, dlatego ley poza gwnymi rdami i kompiluje si j osobno:
+ * {@code javac --add-modules jdk.incubator.vector -cp <klasy> -d <klasy> incubator/VectorLanes.java}.
+ * Uruchomienie te wymaga {@code --add-modules jdk.incubator.vector}; bez tego {@link BatchEvaluator}
+ * nie udostpnia {@link BatchEvaluator.Mode#VECTOR}.
+ * <p/>
+ * Vector API w JDK 17 nie ma operacji liczenia bitw, wic {@link #bitCount(IntVector)} liczy je przesuniciami;
+ * ptle z {@link Integer#bitCount(int)} wektoryzowane przez JIT mog by przez to szybsze, co pokazuje {@link BatchEvaluator#main(String[])}.
+ */
+final class VectorLanes implements BatchEvaluator.Lanes {
+
+    static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private static final int COLUMNS = BoardRules.BLOCKS_PER_ROW;
+
+    private static final int WALLS = 1 | (1 << (COLUMNS + 1));
+
+    private static final int PAIRS = (1 << (COLUMNS + 1)) - 1;
+
+    /**
+     * Tworzony przez refleksj w {@link BatchEvaluator}.
+     */
+    VectorLanes() {
+    }
+
+    /**
+     * Liczy cechy plansz od 0 do {@code n} uoonych w poprzek. Pene wektory id do
+     * {@link VectorSpecies#loopBound(int)}, a reszt liczy jeden wektor z mask, wic dugo wektora
+     * nie musi dzieli dugoci tablic.
+     *
+     * @param cells wiersze, {@code cells[i][k]} to wiersz i planszy k
+     */
+    @Override
+    public void evaluate(int[][] cells, int n, int[] heightSum, int[] holes, int[] rowTransitions, int[] bumpiness) {
+        int bound = SPECIES.loopBound(n);
+        for (int k = 0; k < bound; k += SPECIES.length()) {
+            evaluate(cells, k, SPECIES.maskAll(true), heightSum, holes, rowTransitions, bumpiness);
+        }
+        if (bound < n) {
+            evaluate(cells, bound, SPECIES.indexInRange(bound, n), heightSum, holes, rowTransitions, bumpiness);
+        }
+    }
+
+    /**
+     * Liczy cechy plansz od {@code k} w torach wczonych w masce.
+     */
+    private static void evaluate(int[][] cells, int k, VectorMask<Integer> lanes, int[] heightSum, int[] holes, int[] rowTransitions, int[] bumpiness) {
+        IntVector zero = IntVector.zero(SPECIES);
+        IntVector covered = zero;
+        IntVector heights = zero;
+        IntVector hole = zero;
+        IntVector transitions = zero;
+        // Wysokoci kolumn 0-4 i 5-9 po 5 bitw na kolumn; wysoko to liczba wierszy,
+        // w ktrych kolumna jest ju przykryta, a wic najwyej 22.
+        IntVector low = zero;
+        IntVector high = zero;
+
+        for (int[] cellRow : cells) {
+            IntVector row = IntVector.fromArray(SPECIES, cellRow, k, lanes);
+            IntVector bits = row.lanewise(VectorOperators.LSHL, 1).or(WALLS);
+            transitions = transitions.add(bitCount(bits.lanewise(VectorOperators.XOR, bits.lanewise(VectorOperators.LSHR, 1)).and(PAIRS)));
+            hole = hole.add(bitCount(covered.and(row.not())));
+            covered = covered.or(row);
+            heights = heights.add(bitCount(covered));
+            low = low.add(spread(covered));
+            high = high.add(spread(covered.lanewise(VectorOperators.LSHR, 5)));
+        }
+
+        IntVector bumps = zero;
+        IntVector left = low.and(0x1F);
+        for (int c = 1; c < COLUMNS; c++) {
+            IntVector packed = c < 5 ? low : high;
+            IntVector right = packed.lanewise(VectorOperators.LSHR, 5 * (c % 5)).and(0x1F);
+            bumps = bumps.add(right.sub(left).abs());
+            left = right;
+        }
+        heights.intoArray(heightSum, k, lanes);
+        hole.intoArray(holes, k, lanes);
+        transitions.intoArray(rowTransitions, k, lanes);
+        bumps.intoArray(bumpiness, k, lanes);
+    }
+
+    @Override
+    public String toString() {
+        return SPECIES.toString();
+    }
+
+    /**
+     * Rozsuwa 5 najniszych bitw tak, e bit c trafia na pozycj 5c.
+     */
+    private static IntVector spread(IntVector v) {
+        return v.and(1)
+                .or(v.and(1 << 1).lanewise(VectorOperators.LSHL, 4))
+                .or(v.and(1 << 2).lanewise(VectorOperators.LSHL, 8))
+                .or(v.and(1 << 3).lanewise(VectorOperators.LSHL, 12))
+                .or(v.and(1 << 4).lanewise(VectorOperators.LSHL, 16));
+    }
+
+    /**
+     * Liczba bitw w kadym torze; wystarcza dla wartoci do 16 bitw.
+     */
+    private static IntVector bitCount(IntVector v) {
+        v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555));
+        v = v.and(0x3333).add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F);
+        return v.add(v.lanewise(VectorOperators.LSHR, 8)).and(0x1F);
+    }
+}